@@ -0,0 +1,353 @@
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// Typo-tolerant author lookup. Author names are broken into character trigrams; a query first
+// collects candidate authors that share enough trigrams with it, then verifies each candidate
+// with a bounded Levenshtein automaton. The trigram filter keeps the number of edit-distance
+// checks small no matter how many authors are indexed. The tables are buffers, so an index
+// stored in a segment file is used straight from the mapping.
+public final class AuthorIndex {
+    // Cap on posting entries read and candidates verified per query, to keep latency bounded
+    private static final int MAX_POSTINGS = 200_000;
+    private static final int MAX_CANDIDATES = 256;
+
+    private final StringTable names;
+    private final StringTable keys;
+    // Authors in key order, as UTF-8 bytes, to find one by key
+    private final IntBuffer byKey;
+    private final IntBuffer bookOffsets;
+    private final IntBuffer books;
+
+    // Sorted trigram codes; trigram i owns authors gramPostings[gramOffsets[i] .. gramOffsets[i + 1])
+    private final LongBuffer grams;
+    private final IntBuffer gramOffsets;
+    private final IntBuffer gramPostings;
+
+    private AuthorIndex(StringTable names, StringTable keys, IntBuffer byKey, IntBuffer bookOffsets, IntBuffer books,
+                        LongBuffer grams, IntBuffer gramOffsets, IntBuffer gramPostings) {
+        this.names = names;
+        this.keys = keys;
+        this.byKey = byKey;
+        this.bookOffsets = bookOffsets;
+        this.books = books;
+        this.grams = grams;
+        this.gramOffsets = gramOffsets;
+        this.gramPostings = gramPostings;
+    }
+
+    // Store the index in a segment's index section
+    void write(IndexFile.Writer out) throws IOException {
+        out.strings(names);
+        out.strings(keys);
+        out.ints(byKey);
+        out.ints(bookOffsets);
+        out.ints(books);
+        out.longs(grams);
+        out.ints(gramOffsets);
+        out.ints(gramPostings);
+    }
+
+    // The index write() stored, over the mapped section
+    static AuthorIndex read(IndexFile.Reader in) throws IOException {
+        StringTable names = in.strings();
+        StringTable keys = in.strings();
+        IntBuffer byKey = in.ints();
+        IntBuffer bookOffsets = in.ints();
+        IntBuffer books = in.ints();
+        LongBuffer grams = in.longs();
+        IntBuffer gramOffsets = in.ints();
+        IntBuffer gramPostings = in.ints();
+        int count = names.size();
+        if (keys.size() != count || byKey.limit() != count || bookOffsets.limit() != count + 1
+                || gramOffsets.limit() != grams.limit() + 1) {
+            throw new IOException("Segment indexes are truncated or corrupt");
+        }
+        return new AuthorIndex(names, keys, byKey, bookOffsets, books, grams, gramOffsets, gramPostings);
+    }
+
+    public int authorCount() {
+        return names.size();
+    }
+
+    // The author's name as first seen; other spellings with the same key() share the author
+    public String name(int author) {
+        return names.get(author);
+    }
+
+    public String key(int author) {
+        return keys.get(author);
+    }
+
+    // The author whose key() is key, or -1
+    public int find(String key) {
+        byte[] utf8 = key.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = byKey.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int order = keys.compare(byKey.get(mid), utf8);
+            if (order < 0) {
+                low = mid + 1;
+            } else if (order > 0) {
+                high = mid - 1;
+            } else {
+                return byKey.get(mid);
+            }
+        }
+        return -1;
+    }
+
+    // Ids of the books written by an author, ascending
+    public int[] books(int author) {
+        return books(author, Integer.MAX_VALUE);
+    }
+
+    // The first limit of them
+    public int[] books(int author, int limit) {
+        int start = bookOffsets.get(author);
+        int[] ids = new int[Math.min(bookOffsets.get(author + 1) - start, limit)];
+        books.get(start, ids);
+        return ids;
+    }
+
+    // Comparison key: normalized letters and digits with single spaces, so "J.R.R. Tolkien" becomes "jrr tolkien"
+    public static String key(String name) {
+        String normalized = Tokenizer.normalize(name);
+        StringBuilder key = new StringBuilder(normalized.length());
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                key.append(c);
+            } else if (Character.isWhitespace(c) && key.length() > 0 && key.charAt(key.length() - 1) != ' ') {
+                key.append(' ');
+            }
+        }
+        int end = key.length();
+        return end > 0 && key.charAt(end - 1) == ' ' ? key.substring(0, end - 1) : key.toString();
+    }
+
+    // Edits tolerated for a query of this length: none for short names, up to two for long ones
+    static int maxEdits(String key) {
+        return key.length() <= 4 ? 0 : key.length() <= 8 ? 1 : 2;
+    }
+
+    // An author close to a query: its edit distance and the number of books it has in this index
+    record Match(int author, int distance, int books) {
+    }
+
+    // Authors matching the query, closest first (ties go to authors with more books)
+    public int[] search(String query, int maxAuthors) {
+        List<Match> matches = matches(query, maxAuthors);
+        int[] result = new int[matches.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = matches.get(i).author();
+        }
+        return result;
+    }
+
+    // As search, keeping the distances so results from several indexes can be merged
+    List<Match> matches(String query, int maxAuthors) {
+        String q = key(query);
+        if (q.isEmpty()) {
+            return List.of();
+        }
+        int edits = maxEdits(q);
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton(q, edits);
+        int queryWords = q.split(" ").length;
+
+        List<Match> matches = new ArrayList<>();
+        for (int author : candidates(q, edits)) {
+            String key = keys.get(author);
+            int distance = automaton.distance(key);
+            // A partial name such as a surname may match a run of words in the full name
+            String[] words = key.split(" ");
+            for (int start = 0; start + queryWords <= words.length && queryWords < words.length; start++) {
+                String part = String.join(" ", Arrays.copyOfRange(words, start, start + queryWords));
+                int partDistance = automaton.distance(part);
+                if (partDistance >= 0 && (distance < 0 || partDistance < distance)) {
+                    distance = partDistance;
+                }
+            }
+            if (distance >= 0) {
+                matches.add(new Match(author, distance, bookCount(author)));
+            }
+        }
+        matches.sort((a, b) -> a.distance() != b.distance()
+                ? Integer.compare(a.distance(), b.distance()) : Integer.compare(b.books(), a.books()));
+        return matches.subList(0, Math.min(maxAuthors, matches.size()));
+    }
+
+    private int bookCount(int author) {
+        return bookOffsets.get(author + 1) - bookOffsets.get(author);
+    }
+
+    // Authors sharing enough trigrams with the query to possibly be within `edits` of it.
+    // One edit destroys at most three trigrams, so a match keeps at least |grams| - 3 * edits of them.
+    private int[] candidates(String q, int edits) {
+        long[] queryGrams = trigrams(q);
+        int[] ords = new int[queryGrams.length];
+        int found = 0;
+        for (long gram : queryGrams) {
+            int ord = find(gram);
+            if (ord >= 0) {
+                ords[found++] = ord;
+            }
+        }
+
+        // Read the rarest trigrams first; skipping a common one lowers the required overlap by one
+        Integer[] order = new Integer[found];
+        for (int i = 0; i < found; i++) {
+            order[i] = ords[i];
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(postingLength(a), postingLength(b)));
+        IntList hits = new IntList(64);
+        int skipped = 0;
+        for (int ord : order) {
+            if (hits.size() + postingLength(ord) > MAX_POSTINGS) {
+                skipped++;
+                continue;
+            }
+            for (int i = gramOffsets.get(ord); i < gramOffsets.get(ord + 1); i++) {
+                hits.add(gramPostings.get(i));
+            }
+        }
+        int required = Math.max(1, queryGrams.length - 3 * edits - skipped);
+
+        // Count trigram hits per author and keep the best-overlapping candidates
+        int[] sorted = hits.toArray();
+        Arrays.sort(sorted);
+        List<long[]> counted = new ArrayList<>();
+        for (int i = 0; i < sorted.length; ) {
+            int j = i;
+            while (j < sorted.length && sorted[j] == sorted[i]) {
+                j++;
+            }
+            if (j - i >= required) {
+                counted.add(new long[]{j - i, sorted[i]});
+            }
+            i = j;
+        }
+        counted.sort((a, b) -> Long.compare(b[0], a[0]));
+
+        int[] result = new int[Math.min(MAX_CANDIDATES, counted.size())];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (int) counted.get(i)[1];
+        }
+        return result;
+    }
+
+    private int postingLength(int ord) {
+        return gramOffsets.get(ord + 1) - gramOffsets.get(ord);
+    }
+
+    // Position of a trigram code in grams, or -1
+    private int find(long gram) {
+        int low = 0;
+        int high = grams.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long code = grams.get(mid);
+            if (code < gram) {
+                low = mid + 1;
+            } else if (code > gram) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Distinct trigrams of the key padded with a space on each side, packed three chars to a long
+    static long[] trigrams(String key) {
+        String padded = " " + key + " ";
+        long[] result = new long[Math.max(0, padded.length() - 2)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        return Arrays.stream(result).distinct().toArray();
+    }
+
+    // Collects (book, author) pairs; books must be added in ascending id order
+    public static final class Builder {
+        private final Map<String, Integer> ords = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<IntList> books = new ArrayList<>();
+
+        public Builder add(int bookId, List<String> authors) {
+            for (String author : authors) {
+                String key = key(author);
+                if (key.isEmpty()) {
+                    continue;
+                }
+                Integer ord = ords.get(key);
+                if (ord == null) {
+                    ord = names.size();
+                    ords.put(key, ord);
+                    names.add(author.trim());
+                    books.add(new IntList(4));
+                }
+                IntList list = books.get(ord);
+                if (list.last() != bookId) {
+                    list.add(bookId);
+                }
+            }
+            return this;
+        }
+
+        public AuthorIndex build() {
+            int count = names.size();
+            String[] keys = new String[count];
+            ords.forEach((key, ord) -> keys[ord] = key);
+            byte[][] encoded = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                encoded[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+            }
+            int[] byKey = IntStream.range(0, count).boxed()
+                    .sorted((a, b) -> Arrays.compareUnsigned(encoded[a], encoded[b])).mapToInt(Integer::intValue).toArray();
+
+            int[] bookOffsets = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                bookOffsets[i + 1] = bookOffsets[i] + books.get(i).size();
+            }
+            int[] bookIds = new int[bookOffsets[count]];
+            for (int i = 0; i < count; i++) {
+                IntList list = books.get(i);
+                for (int j = 0; j < list.size(); j++) {
+                    bookIds[bookOffsets[i] + j] = list.get(j);
+                }
+            }
+
+            // Authors are visited in ordinal order, so every trigram posting list comes out sorted
+            Map<Long, IntList> gramLists = new HashMap<>();
+            for (int author = 0; author < count; author++) {
+                for (long gram : trigrams(keys[author])) {
+                    gramLists.computeIfAbsent(gram, g -> new IntList(4)).add(author);
+                }
+            }
+            long[] grams = gramLists.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            int[] gramOffsets = new int[grams.length + 1];
+            for (int i = 0; i < grams.length; i++) {
+                gramOffsets[i + 1] = gramOffsets[i] + gramLists.get(grams[i]).size();
+            }
+            int[] gramPostings = new int[gramOffsets[grams.length]];
+            for (int i = 0; i < grams.length; i++) {
+                IntList list = gramLists.get(grams[i]);
+                for (int j = 0; j < list.size(); j++) {
+                    gramPostings[gramOffsets[i] + j] = list.get(j);
+                }
+            }
+            return new AuthorIndex(StringTable.of(names.toArray(new String[0])), StringTable.of(encoded),
+                    IntBuffer.wrap(byKey), IntBuffer.wrap(bookOffsets), IntBuffer.wrap(bookIds), LongBuffer.wrap(grams),
+                    IntBuffer.wrap(gramOffsets), IntBuffer.wrap(gramPostings));
+        }
+    }
+}
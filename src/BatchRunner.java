@@ -0,0 +1,147 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Runs a file of queries without the menu, for offline jobs. Each input line is
+// "type<TAB>query" or "type<TAB>query<TAB>limit", with type one of title, author or genre;
+// blank lines and lines starting with # are skipped. Each query produces one JSON line,
+//   {"line":3,"type":"author","query":"Tolkien","books":[...]}  or  {"line":3,"error":"..."}
+// in input order. Up to `parallelism` queries run at once on a fixed pool; the reader stops
+// reading ahead while the oldest query is still running, so a slow query holds back output and
+// input rather than letting finished results pile up in memory.
+public final class BatchRunner {
+    public static final String TENANT = "batch";
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 40;
+    // A batch job would rather wait for an upstream permit than fail a query. No more than
+    // parallelism queries queue for one at a time, so waits stay near parallelism / tenant rate.
+    private static final long MAX_PERMIT_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final SearchService service;
+    private final int parallelism;
+
+    public BatchRunner(SearchService service, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.service = service;
+        this.parallelism = parallelism;
+    }
+
+    public record Summary(int queries, int failed) {
+    }
+
+    // One query read from the input, and where its answer will come from
+    private record Pending(int line, SearchType type, String query, CompletableFuture<List<Book>> books, String error) {
+    }
+
+    public Summary run(BufferedReader in, Writer out) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "booksage-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Pending> inFlight = new ArrayDeque<>(parallelism);
+        StringBuilder buffer = new StringBuilder(4096);
+        JsonWriter json = new JsonWriter(buffer);
+        int queries = 0;
+        int failed = 0;
+        try {
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                if (inFlight.size() == parallelism) {
+                    failed += write(inFlight.removeFirst(), json, buffer, out);
+                }
+                inFlight.addLast(submit(number, line, workers));
+                queries++;
+            }
+            while (!inFlight.isEmpty()) {
+                failed += write(inFlight.removeFirst(), json, buffer, out);
+            }
+            out.flush();
+        } finally {
+            for (Pending pending : inFlight) {
+                if (pending.books() != null) {
+                    pending.books().cancel(false);
+                }
+            }
+            workers.shutdownNow();
+        }
+        return new Summary(queries, failed);
+    }
+
+    private Pending submit(int number, String line, ExecutorService workers) {
+        String[] columns = line.split("\t", -1);
+        SearchType type = SearchType.named(columns[0].trim());
+        if (columns.length < 2 || type == null) {
+            return new Pending(number, type, "", null, "Expected title, author or genre, a tab, then the query");
+        }
+        String query = columns[1].trim();
+        int limit = DEFAULT_LIMIT;
+        if (columns.length > 2 && !columns[2].isBlank()) {
+            try {
+                limit = Integer.parseInt(columns[2].trim());
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit < 1 || limit > MAX_LIMIT) {
+                return new Pending(number, type, query, null, "limit must be between 1 and " + MAX_LIMIT);
+            }
+        }
+        int pageSize = limit;
+        // Local searches run on the caller's thread, so hand the whole search to a worker
+        CompletableFuture<List<Book>> books = CompletableFuture
+                .supplyAsync(() -> service.search(TENANT, type, query, pageSize, MAX_PERMIT_WAIT_MILLIS), workers)
+                .thenCompose(search -> search);
+        return new Pending(number, type, query, books, null);
+    }
+
+    // Wait for the query and write its line; returns 1 if it failed
+    private static int write(Pending pending, JsonWriter json, StringBuilder buffer, Writer out) throws IOException {
+        String error = pending.error();
+        List<Book> books = null;
+        if (error == null) {
+            try {
+                books = pending.books().join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                String reason = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+                error = cause instanceof IllegalArgumentException ? "Invalid query: " + reason : "Search failed: " + reason;
+            }
+        }
+
+        buffer.setLength(0);
+        json.reset().beginObject();
+        json.name("line").value(pending.line());
+        if (pending.type() != null) {
+            json.name("type").value(pending.type().name().toLowerCase(Locale.ROOT));
+            json.name("query").value(pending.query());
+        }
+        if (error != null) {
+            json.name("error").value(error);
+        } else {
+            json.name("books").beginArray();
+            for (Book book : books) {
+                book.writeJson(json);
+            }
+            json.endArray();
+        }
+        json.endObject();
+        buffer.append('\n');
+        out.append(buffer);
+        return error != null ? 1 : 0;
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+// Ranks documents with BM25 summed over several weighted fields (title, subtitle, description).
+// Postings are walked document-at-a-time with block-max WAND pruning, and scored documents go
+// through a bounded TopK heap, so query cost depends on k rather than on posting-list length.
+public final class Bm25 {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final InvertedIndex[] fields;
+    private final float[] weights;
+
+    // fields[i] is scored with weights[i]; all fields must be built over the same doc ids
+    public Bm25(InvertedIndex[] fields, float[] weights) {
+        this.fields = fields;
+        this.weights = weights;
+    }
+
+    // Inverse document frequency of a term present in docFreq of docCount documents
+    static float idf(int docFreq, int docCount) {
+        return (float) Math.log(1 + (docCount - docFreq + 0.5) / (docFreq + 0.5));
+    }
+
+    // Saturating term-frequency component; always below K1 + 1
+    static float tf(int freq, int docLength, float averageLength) {
+        float norm = K1 * (1 - B + B * docLength / averageLength);
+        return freq * (K1 + 1) / (freq + norm);
+    }
+
+    // Collection statistics behind idf and length normalization: for each term, its document
+    // frequency per field, and per field the document count, the total token count and the number
+    // of documents with any tokens. A shard searched with the statistics summed over all shards
+    // weighs terms and normalizes lengths as one index over the whole catalog would.
+    public record Stats(Map<String, int[]> docFreqs, int[] docCounts, long[] totalLengths, int[] presentCounts) {
+
+        public Stats plus(Stats other) {
+            Map<String, int[]> sum = new HashMap<>(docFreqs);
+            other.docFreqs.forEach((term, freqs) -> sum.merge(term, freqs, Stats::add));
+            long[] lengths = new long[totalLengths.length];
+            for (int f = 0; f < lengths.length; f++) {
+                lengths[f] = totalLengths[f] + other.totalLengths[f];
+            }
+            return new Stats(sum, add(docCounts, other.docCounts), lengths, add(presentCounts, other.presentCounts));
+        }
+
+        // Tokens per document of the field, over the documents that have any
+        public float averageLength(int field) {
+            return presentCounts[field] == 0 ? 0 : (float) totalLengths[field] / presentCounts[field];
+        }
+
+        private static int[] add(int[] a, int[] b) {
+            int[] sum = new int[a.length];
+            for (int i = 0; i < a.length; i++) {
+                sum[i] = a[i] + b[i];
+            }
+            return sum;
+        }
+    }
+
+    // This index's statistics for the query's terms
+    public Stats stats(String query) {
+        Map<String, int[]> docFreqs = new HashMap<>();
+        for (String token : Tokenizer.tokenize(query)) {
+            int[] freqs = new int[fields.length];
+            for (int f = 0; f < fields.length; f++) {
+                InvertedIndex.Cursor cursor = fields[f].cursor(token);
+                freqs[f] = cursor != null ? cursor.docFreq() : 0;
+            }
+            docFreqs.put(token, freqs);
+        }
+        int[] docCounts = new int[fields.length];
+        long[] totalLengths = new long[fields.length];
+        int[] presentCounts = new int[fields.length];
+        for (int f = 0; f < fields.length; f++) {
+            docCounts[f] = fields[f].docCount();
+            totalLengths[f] = fields[f].totalLength();
+            presentCounts[f] = fields[f].presentCount();
+        }
+        return new Stats(docFreqs, docCounts, totalLengths, presentCounts);
+    }
+
+    // The k highest-scoring documents containing any query term in any field
+    public List<TopK.Hit> search(String query, int k) {
+        return search(query, k, stats(query));
+    }
+
+    // As search, taking idf and average lengths from stats, which must cover this index and the
+    // query's terms
+    public List<TopK.Hit> search(String query, int k, Stats stats) {
+        List<Term> terms = new ArrayList<>();
+        for (String token : new LinkedHashSet<>(Tokenizer.tokenize(query))) {
+            for (int f = 0; f < fields.length; f++) {
+                InvertedIndex.Cursor cursor = fields[f].cursor(token);
+                if (cursor != null) {
+                    float idf = idf(stats.docFreqs().get(token)[f], stats.docCounts()[f]);
+                    terms.add(new Term(cursor, weights[f] * idf, stats.averageLength(f)));
+                }
+            }
+        }
+
+        return Wand.search(terms, k);
+    }
+
+    // One query term in one field, with its field weight and idf folded together
+    private static final class Term implements Wand.Scorer {
+        final InvertedIndex.Cursor cursor;
+        final float weight;
+        final float averageLength;
+        final float maxScore;
+
+        Term(InvertedIndex.Cursor cursor, float weight, float averageLength) {
+            this.cursor = cursor;
+            this.weight = weight;
+            this.averageLength = averageLength;
+            this.maxScore = weight * cursor.maxTf(averageLength);
+        }
+
+        @Override
+        public int doc() {
+            return cursor.doc();
+        }
+
+        @Override
+        public void next() {
+            cursor.next();
+        }
+
+        @Override
+        public void advance(int target) {
+            cursor.advance(target);
+        }
+
+        @Override
+        public float maxScore() {
+            return maxScore;
+        }
+
+        @Override
+        public int shallowAdvance(int target) {
+            return cursor.shallowAdvance(target);
+        }
+
+        @Override
+        public float blockMaxScore() {
+            return weight * cursor.blockMaxTf(averageLength);
+        }
+
+        @Override
+        public float score() {
+            return weight * tf(cursor.freq(), cursor.index().docLength(cursor.doc()), averageLength);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// A single book; id is its position in the library, or NO_ID for a book from Google Books
+// isbn13 is 0 when unknown; ratingsCount is 0 for unrated books
+//
+// Laid out for density: authors, genres and the publisher are ids into dictionaries shared by
+// all books, the ISBN is a primitive long and the description is kept as UTF-8 bytes, deflated
+// when that makes it smaller. Measured on the sample catalog replicated to 200k books, a Book
+// takes 276 bytes against 418 for the earlier all-String record. The target is 256; the title
+// String (about 70 bytes) is the largest piece left.
+// Dictionary ids are never freed, so only catalog books are interned. A book from Google Books
+// or the result cache (NO_ID) keeps its names as plain strings in a Names record instead, and
+// they are collected with it once no cache holds it; otherwise every upstream page ever seen
+// would stay in the dictionaries for the life of the process. The names reference costs every
+// book 8 bytes (268 before it); an upstream book measures 412, all of it collectable.
+public final class Book {
+    public static final StringDictionary AUTHORS = new StringDictionary();
+    public static final StringDictionary GENRES = new StringDictionary();
+    public static final StringDictionary PUBLISHERS = new StringDictionary();
+    // Id of books that are not in the catalog, so they cannot be mistaken for one that is
+    public static final int NO_ID = -1;
+
+    // Descriptions shorter than this rarely shrink under deflate
+    private static final int COMPRESS_THRESHOLD = 64;
+    private static final byte RAW = 0;
+    private static final byte DEFLATED = 1;
+    private static final int[] NO_IDS = new int[0];
+    private static final byte[] NO_TEXT = {RAW};
+    private static final int NO_PUBLISHER = -1;
+
+    private final int id;
+    private final String title;
+    private final String subtitle;
+    private final int[] authorIds;
+    private final int[] genreIds;
+    private final int publisherId;
+    private final byte[] description;
+    private final long isbn13;
+    private final float averageRating;
+    private final int ratingsCount;
+    // Only for books that are not in the catalog, which have no dictionary ids
+    private final Names names;
+
+    public Book(int id, String title, String subtitle, List<String> authors, List<String> categories,
+                String publisher, String description, long isbn13, float averageRating, int ratingsCount) {
+        this(id, title, subtitle, id == NO_ID ? NO_IDS : intern(AUTHORS, authors),
+                id == NO_ID ? NO_IDS : intern(GENRES, categories),
+                id == NO_ID || publisher.isEmpty() ? NO_PUBLISHER : PUBLISHERS.id(publisher), encode(description),
+                isbn13, averageRating, ratingsCount,
+                id == NO_ID ? new Names(List.copyOf(authors), List.copyOf(categories), publisher) : null);
+    }
+
+    // From already encoded fields, as stored by ColumnStore
+    Book(int id, String title, String subtitle, int[] authorIds, int[] genreIds, int publisherId,
+         byte[] description, long isbn13, float averageRating, int ratingsCount) {
+        this(id, title, subtitle, authorIds, genreIds, publisherId, description, isbn13, averageRating,
+                ratingsCount, null);
+    }
+
+    private Book(int id, String title, String subtitle, int[] authorIds, int[] genreIds, int publisherId,
+                 byte[] description, long isbn13, float averageRating, int ratingsCount, Names names) {
+        this.id = id;
+        this.title = title;
+        this.subtitle = subtitle.isEmpty() ? "" : subtitle;
+        this.authorIds = authorIds.length == 0 ? NO_IDS : authorIds;
+        this.genreIds = genreIds.length == 0 ? NO_IDS : genreIds;
+        this.publisherId = publisherId;
+        this.description = description.length == 1 && description[0] == RAW ? NO_TEXT : description;
+        this.isbn13 = isbn13;
+        this.averageRating = averageRating;
+        this.ratingsCount = ratingsCount;
+        this.names = names;
+    }
+
+    // The ISBN-13 as a number, or 0 unless text holds exactly 13 digits (hyphens and spaces allowed)
+    public static long parseIsbn(String text) {
+        long value = 0;
+        int digits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else if (c != '-' && c != ' ') {
+                return 0;
+            }
+        }
+        return digits == 13 ? value : 0;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public String title() {
+        return title;
+    }
+
+    public String subtitle() {
+        return subtitle;
+    }
+
+    public List<String> authors() {
+        return names != null ? names.authors : lookup(AUTHORS, authorIds);
+    }
+
+    public List<String> categories() {
+        return names != null ? names.categories : lookup(GENRES, genreIds);
+    }
+
+    // "" when unknown
+    public String publisher() {
+        if (names != null) {
+            return names.publisher;
+        }
+        return publisherId == NO_PUBLISHER ? "" : PUBLISHERS.value(publisherId);
+    }
+
+    // Decoded on every call; callers that need it repeatedly should keep the result
+    public String description() {
+        return decodeDescription(description);
+    }
+
+    public long isbn13() {
+        return isbn13;
+    }
+
+    // This book with its names interned, as it is stored when added to the catalog
+    Book interned() {
+        if (names == null) {
+            return this;
+        }
+        return new Book(id, title, subtitle, intern(AUTHORS, names.authors), intern(GENRES, names.categories),
+                names.publisher.isEmpty() ? NO_PUBLISHER : PUBLISHERS.id(names.publisher), description, isbn13,
+                averageRating, ratingsCount);
+    }
+
+    // Empty for books that are not in the catalog
+    int[] authorIds() {
+        return authorIds;
+    }
+
+    int[] genreIds() {
+        return genreIds;
+    }
+
+    int publisherId() {
+        return publisherId;
+    }
+
+    byte[] encodedDescription() {
+        return description;
+    }
+
+    public float averageRating() {
+        return averageRating;
+    }
+
+    public int ratingsCount() {
+        return ratingsCount;
+    }
+
+    // Title with its subtitle, e.g. "Mistborn: The Final Empire"
+    public String fullTitle() {
+        return subtitle.isEmpty() ? title : title + ": " + subtitle;
+    }
+
+    // Authors joined for display, e.g. "Isaac Asimov, Robert Silverberg"
+    public String authorLine() {
+        return String.join(", ", authors());
+    }
+
+    // The book as a JSON object; unknown ISBN, publisher and ratings are left out, and so is the
+    // id of a book that is not in the catalog
+    public void writeJson(JsonWriter json) {
+        json.beginObject();
+        if (id != NO_ID) {
+            json.name("id").value(id);
+        }
+        json.name("title").value(title);
+        if (!subtitle.isEmpty()) {
+            json.name("subtitle").value(subtitle);
+        }
+        json.name("authors").strings(authors());
+        json.name("categories").strings(categories());
+        if (!publisher().isEmpty()) {
+            json.name("publisher").value(publisher());
+        }
+        if (isbn13 != 0) {
+            json.name("isbn13").value(Long.toString(isbn13));
+        }
+        if (ratingsCount > 0) {
+            json.name("averageRating").value(averageRating);
+            json.name("ratingsCount").value(ratingsCount);
+        }
+        json.name("description").value(description());
+        json.endObject();
+    }
+
+    // Rough heap footprint of this book, not counting the shared dictionaries, assuming compact
+    // (one byte per char) strings and a 64-bit JVM with compressed pointers
+    public int estimatedBytes() {
+        int bytes = 64 + stringBytes(title) + stringBytes(subtitle)
+                + arrayBytes(4 * authorIds.length) + arrayBytes(4 * genreIds.length) + arrayBytes(description.length);
+        if (names != null) {
+            bytes += 24 + stringBytes(names.publisher);
+            for (String name : names.authors) {
+                bytes += 4 + stringBytes(name);
+            }
+            for (String name : names.categories) {
+                bytes += 4 + stringBytes(name);
+            }
+        }
+        return bytes;
+    }
+
+    // Footprint of a result list, as weighed by the results cache
+    public static int estimatedBytes(List<Book> books) {
+        int bytes = 24 + 4 * books.size();
+        for (Book book : books) {
+            bytes += book.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Book)) {
+            return false;
+        }
+        Book other = (Book) o;
+        return id == other.id && publisherId == other.publisherId && isbn13 == other.isbn13
+                && Float.compare(averageRating, other.averageRating) == 0 && ratingsCount == other.ratingsCount
+                && title.equals(other.title) && subtitle.equals(other.subtitle)
+                && Arrays.equals(authorIds, other.authorIds) && Arrays.equals(genreIds, other.genreIds)
+                && Arrays.equals(description, other.description) && Objects.equals(names, other.names);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, title, subtitle, isbn13);
+    }
+
+    @Override
+    public String toString() {
+        return "Book[id=" + id + ", title=" + fullTitle() + ", authors=" + authors() + ", isbn13=" + isbn13 + "]";
+    }
+
+    private record Names(List<String> authors, List<String> categories, String publisher) {
+    }
+
+    private static int[] intern(StringDictionary dictionary, List<String> values) {
+        if (values.isEmpty()) {
+            return NO_IDS;
+        }
+        int[] ids = new int[values.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = dictionary.id(values.get(i));
+        }
+        return ids;
+    }
+
+    static List<String> lookup(StringDictionary dictionary, int[] ids) {
+        String[] values = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = dictionary.value(ids[i]);
+        }
+        return List.of(values);
+    }
+
+    // RAW followed by the UTF-8 bytes, or DEFLATED, the decoded length and the deflated bytes
+    private static byte[] encode(String text) {
+        if (text.isEmpty()) {
+            return NO_TEXT;
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length >= COMPRESS_THRESHOLD) {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+            try {
+                deflater.setInput(utf8);
+                deflater.finish();
+                byte[] buffer = new byte[utf8.length];
+                ByteBuffer out = ByteBuffer.allocate(5 + utf8.length).put(DEFLATED).putInt(utf8.length);
+                while (!deflater.finished() && out.position() < out.limit()) {
+                    int n = deflater.deflate(buffer, 0, Math.min(buffer.length, out.remaining()));
+                    out.put(buffer, 0, n);
+                }
+                if (deflater.finished() && out.position() < 1 + utf8.length) {
+                    return Arrays.copyOf(out.array(), out.position());
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+        byte[] raw = new byte[1 + utf8.length];
+        raw[0] = RAW;
+        System.arraycopy(utf8, 0, raw, 1, utf8.length);
+        return raw;
+    }
+
+    static String decodeDescription(byte[] encoded) {
+        if (encoded[0] == RAW) {
+            return new String(encoded, 1, encoded.length - 1, StandardCharsets.UTF_8);
+        }
+        int length = ByteBuffer.wrap(encoded, 1, 4).getInt();
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(encoded, 5, encoded.length - 5);
+            byte[] utf8 = new byte[length];
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                n += inflater.inflate(utf8, n, length - n);
+                if (inflater.needsInput()) {
+                    break;
+                }
+            }
+            return new String(utf8, 0, n, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt description", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int stringBytes(String s) {
+        return s.isEmpty() ? 0 : 40 + s.length();
+    }
+
+    private static int arrayBytes(int length) {
+        return length == 0 ? 0 : 16 + length;
+    }
+}
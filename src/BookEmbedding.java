@@ -0,0 +1,85 @@
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Fixed-length vectors for finding books like a given one. Description words, genres and authors
+// are feature-hashed into DIMENSIONS slots, each feature adding +1 or -1 to one slot, so no
+// vocabulary has to be built or shared: a book fetched from Google Books gets a vector comparable
+// with the catalog's. Each of the three parts is normalized before weighting, so a long
+// description does not drown out the genres, and the result has unit length; the dot product of
+// two vectors is their cosine similarity.
+public final class BookEmbedding {
+    public static final int DIMENSIONS = 64;
+    private static final float DESCRIPTION_WEIGHT = 1.0f;
+    private static final float GENRE_WEIGHT = 1.0f;
+    private static final float AUTHOR_WEIGHT = 0.75f;
+    // Shorter words are mostly function words and carry little about the book
+    private static final int MIN_WORD_LENGTH = 4;
+    private static final Set<String> STOP_WORDS = Set.of(
+            "about", "after", "also", "been", "from", "have", "into", "more", "most", "only", "other",
+            "over", "some", "than", "that", "their", "them", "then", "there", "they", "this", "through",
+            "what", "when", "where", "which", "will", "with", "were", "your");
+
+    private BookEmbedding() {
+    }
+
+    public static float[] of(Book book) {
+        return of(book.description(), book.categories(), book.authors());
+    }
+
+    public static float[] of(String description, List<String> genres, List<String> authors) {
+        float[] vector = new float[DIMENSIONS];
+        float[] part = new float[DIMENSIONS];
+
+        // Each distinct word counts once, so repetition in a blurb does not skew it
+        Set<String> words = new HashSet<>();
+        for (String word : Tokenizer.tokenize(description)) {
+            if (word.length() >= MIN_WORD_LENGTH && !STOP_WORDS.contains(word) && words.add(word)) {
+                hash(part, word);
+            }
+        }
+        addNormalized(vector, part, DESCRIPTION_WEIGHT);
+        for (String genre : genres) {
+            hash(part, "genre:" + Tokenizer.normalize(genre));
+        }
+        addNormalized(vector, part, GENRE_WEIGHT);
+        for (String author : authors) {
+            hash(part, "author:" + Tokenizer.normalize(author));
+        }
+        addNormalized(vector, part, AUTHOR_WEIGHT);
+
+        float norm = norm(vector);
+        if (norm > 0) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] /= norm;
+            }
+        }
+        return vector;
+    }
+
+    // The feature's slot and sign both come from one well-mixed hash of its text
+    private static void hash(float[] part, String feature) {
+        int h = feature.hashCode() * 0x9E3779B9;
+        h ^= h >>> 16;
+        part[h & (DIMENSIONS - 1)] += h < 0 ? -1 : 1;
+    }
+
+    // Add the part scaled to the weight's length, then clear it for the next one
+    private static void addNormalized(float[] vector, float[] part, float weight) {
+        float norm = norm(part);
+        if (norm > 0) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] += part[i] * weight / norm;
+                part[i] = 0;
+            }
+        }
+    }
+
+    private static float norm(float[] vector) {
+        float sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        return (float) Math.sqrt(sum);
+    }
+}
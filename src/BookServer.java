@@ -0,0 +1,223 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// HTTP front end for the search service, so that any number of clients share one warm library
+// and one result cache:
+//   GET /search/title?q=dune&limit=10
+//   GET /search/author?q=le+guin
+//   GET /search/genre?q=fantasy+AND+young+adult
+// answer {"type":..., "query":..., "books":[...]}, or {"error":...} with a 4xx or 5xx status.
+// Clients are rate limited upstream by address. Behind a reverse proxy every request comes from
+// the proxy's address, so a request from one of the configured trusted proxies is rate limited by
+// its X-BookSage-Tenant header instead; the header is ignored from anyone else, who could
+// otherwise pick any tenant's budget, or a fresh one per request.
+//
+// Every exchange runs on a thread of its own and simply blocks on the search. On a runtime with
+// virtual threads (Java 21 and later) those are virtual, so thousands of concurrent clients
+// cost little and there is no pool to tune; older runtimes fall back to a cached pool of
+// platform threads, which behaves the same but spends a real thread per connection.
+public final class BookServer implements AutoCloseable {
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 40;
+    private static final String PATH_PREFIX = "/search/";
+    private static final String TENANT_HEADER = "X-BookSage-Tenant";
+    // Backlog of connections the kernel queues before accept
+    private static final int BACKLOG = 1024;
+    private static final int STOP_DELAY_SECONDS = 1;
+
+    private final SearchService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Set<InetAddress> trustedProxies;
+
+    private BookServer(SearchService service, HttpServer server, ExecutorService executor,
+                       Set<InetAddress> trustedProxies) {
+        this.service = service;
+        this.server = server;
+        this.executor = executor;
+        this.trustedProxies = trustedProxies;
+    }
+
+    public static BookServer start(SearchService service, int port) throws IOException {
+        return start(service, port, Set.of());
+    }
+
+    // As start, taking the tenant header from requests sent by the trusted proxies
+    public static BookServer start(SearchService service, int port, Set<InetAddress> trustedProxies)
+            throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        ExecutorService executor = newThreadPerTaskExecutor();
+        BookServer bookServer = new BookServer(service, server, executor, Set.copyOf(trustedProxies));
+        server.createContext(PATH_PREFIX, bookServer::handle);
+        server.setExecutor(executor);
+        server.start();
+        return bookServer;
+    }
+
+    // The port actually bound, which differs from the requested one when that was 0
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // Whether exchanges run on virtual threads
+    public static boolean virtualThreads() {
+        return virtualThreadFactory() != null;
+    }
+
+    @Override
+    public void close() {
+        server.stop(STOP_DELAY_SECONDS);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(STOP_DELAY_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendError(exchange, 405, "Only GET is supported");
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            SearchType type = path.startsWith(PATH_PREFIX) ? SearchType.named(path.substring(PATH_PREFIX.length())) : null;
+            if (type == null) {
+                sendError(exchange, 404, "Use /search/title, /search/author or /search/genre");
+                return;
+            }
+            Map<String, String> params = queryParameters(exchange.getRequestURI().getRawQuery());
+            String query = params.getOrDefault("q", "").trim();
+            int limit;
+            try {
+                limit = Integer.parseInt(params.getOrDefault("limit", Integer.toString(DEFAULT_LIMIT)));
+            } catch (NumberFormatException e) {
+                sendError(exchange, 400, "limit must be a number");
+                return;
+            }
+            if (query.isEmpty() || limit < 1 || limit > MAX_LIMIT) {
+                sendError(exchange, 400, "q is required and limit must be between 1 and " + MAX_LIMIT);
+                return;
+            }
+
+            List<Book> books;
+            try {
+                books = service.search(tenant(exchange), type, query, limit).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                String reason = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+                if (cause instanceof IllegalArgumentException) {
+                    sendError(exchange, 400, "Invalid query: " + reason);
+                } else if (cause instanceof RateLimitedException) {
+                    sendError(exchange, 429, reason);
+                } else {
+                    sendError(exchange, 502, "Search failed: " + reason);
+                }
+                return;
+            }
+
+            StringBuilder body = new StringBuilder(256 + 512 * books.size());
+            JsonWriter json = new JsonWriter(body);
+            json.beginObject();
+            json.name("type").value(type.name().toLowerCase(Locale.ROOT));
+            json.name("query").value(query);
+            json.name("books").beginArray();
+            for (Book book : books) {
+                book.writeJson(json);
+            }
+            json.endArray();
+            json.endObject();
+            send(exchange, 200, body);
+        }
+    }
+
+    private String tenant(HttpExchange exchange) {
+        InetAddress remote = exchange.getRemoteAddress().getAddress();
+        if (trustedProxies.contains(remote)) {
+            String tenant = exchange.getRequestHeaders().getFirst(TENANT_HEADER);
+            if (tenant != null && !tenant.isBlank()) {
+                return tenant;
+            }
+        }
+        return remote.getHostAddress();
+    }
+
+    // Decoded name=value pairs; the last of repeated names wins
+    private static Map<String, String> queryParameters(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            try {
+                params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                // Malformed escapes drop the pair, as if it had not been sent
+            }
+        }
+        return params;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder body = new StringBuilder(64 + message.length());
+        new JsonWriter(body).beginObject().name("error").value(message).endObject();
+        send(exchange, status, body);
+    }
+
+    private static void send(HttpExchange exchange, int status, StringBuilder body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() where it exists, looked up reflectively so
+    // that the code still builds and runs on Java 17
+    private static ExecutorService newThreadPerTaskExecutor() {
+        Method factory = virtualThreadFactory();
+        if (factory != null) {
+            try {
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Fall through to platform threads
+            }
+        }
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "booksage-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static Method virtualThreadFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Non-blocking client for the Google Books volumes API.
+// All instances share one HttpClient, and with it one connection pool; requests go out over
+// HTTP/2 where the server supports it, so concurrent searches multiplex over a single connection.
+// Calls return immediately and no thread waits on the network while a response is in flight.
+// Requests ask only for the fields VolumeParser reads and accept gzip; VolumeBodySubscriber
+// inflates the body chunk by chunk as it arrives and parses it once complete, all on the
+// HttpClient's own threads, so no thread blocks reading a response.
+public final class BooksApiClient {
+    public static final String DEFAULT_BASE_URL = "https://www.googleapis.com/books/v1";
+
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(5))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    // Google only compresses responses for clients whose User-Agent mentions gzip
+    private static final String USER_AGENT = "BookSage/1.0 (gzip)";
+
+    private final URI baseUri;
+    private final String apiKey;
+
+    // baseUrl can point at a local stub server; apiKey may be null
+    public BooksApiClient(String baseUrl, String apiKey) {
+        this.baseUri = URI.create(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/");
+        this.apiKey = apiKey;
+    }
+
+    // Client configured from the booksage.api.url system property and GOOGLE_BOOKS_API_KEY
+    public static BooksApiClient fromEnvironment() {
+        return new BooksApiClient(System.getProperty("booksage.api.url", DEFAULT_BASE_URL),
+                System.getenv("GOOGLE_BOOKS_API_KEY"));
+    }
+
+    // One page of volumes matching the query; fails with BooksApiException on a non-200 response
+    public CompletableFuture<List<Book>> search(SearchType type, String query, int startIndex, int maxResults) {
+        HttpRequest request = HttpRequest.newBuilder(volumesUri(type, query, startIndex, maxResults))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .header("User-Agent", USER_AGENT)
+                .GET()
+                .build();
+        return HTTP.sendAsync(request, BooksApiClient::volumes).thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new BooksApiException(response.statusCode(), "Google Books returned HTTP " + response.statusCode());
+            }
+            return response.body();
+        });
+    }
+
+    // An error response's body is discarded unread
+    private static HttpResponse.BodySubscriber<List<Book>> volumes(HttpResponse.ResponseInfo response) {
+        if (response.statusCode() != 200) {
+            return HttpResponse.BodySubscribers.replacing(List.of());
+        }
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        return new VolumeBodySubscriber(gzip);
+    }
+
+    URI volumesUri(SearchType type, String query, int startIndex, int maxResults) {
+        StringBuilder uri = new StringBuilder("volumes?q=")
+                .append(URLEncoder.encode(type.upstreamQuery(query), StandardCharsets.UTF_8))
+                .append("&startIndex=").append(startIndex)
+                .append("&maxResults=").append(maxResults)
+                .append("&printType=books")
+                .append("&fields=").append(URLEncoder.encode(VolumeParser.FIELDS, StandardCharsets.UTF_8));
+        if (apiKey != null && !apiKey.isBlank()) {
+            uri.append("&key=").append(URLEncoder.encode(apiKey, StandardCharsets.UTF_8));
+        }
+        return baseUri.resolve(uri.toString());
+    }
+}
@@ -0,0 +1,568 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+// Turns a catalog dump into a BookSage catalog file, or into segments of a library, without ever
+// holding the dump in memory. Lines flow through a pipeline of stages on their own threads, joined
+// by bounded queues so that a slow stage holds back the reader instead of letting work pile up:
+//   read -> parse (one worker per spare core) -> normalize -> dedupe -> write or index
+// The index stage collects books into segments and builds each one as it fills, while the
+// stages before it go on with the rows that follow.
+// Work moves in batches of lines to keep queue traffic low. Input is either JSON lines (Google
+// Books volumes, or Open Library records with the JSON in the last tab-separated column) or
+// rows in the catalog's own TSV layout; files ending in .gz are decompressed on the fly.
+// Duplicates are recognised by ISBN-13, or by normalized title and first author when there is
+// none; the dedupe stage keeps one 64-bit hash per book seen.
+public final class BulkImporter {
+    private static final int BATCH_SIZE = 512;
+    private static final int QUEUE_BATCHES = 64;
+    private static final long PROGRESS_EVERY = 1_000_000;
+    // How often the thread running the import checks whether progress is due
+    private static final long PROGRESS_CHECK_MILLIS = 500;
+    // Marks the end of the stream; never mutated
+    private static final List<Object> END = List.of();
+
+    private final int parseWorkers;
+    private final Progress progress;
+    private final AtomicLong read = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    // The running stages; a fixed list, replaced whole, so stopAll can walk it from any stage
+    private volatile List<Thread> threads = List.of();
+
+    public BulkImporter(int parseWorkers, Progress progress) {
+        this.parseWorkers = Math.max(1, parseWorkers);
+        this.progress = progress;
+    }
+
+    // Sized so that every stage gets a core: the parse stage takes whatever the others leave
+    public static BulkImporter forThisMachine(Progress progress) {
+        return new BulkImporter(Runtime.getRuntime().availableProcessors() - 4, progress);
+    }
+
+    // Told every PROGRESS_EVERY lines read how far the import has got. Called on the thread that
+    // runs the import, never on a stage's, so it may write to that thread's console.
+    public interface Progress {
+        void report(long read, long written);
+    }
+
+    public record Summary(long read, long rejected, long duplicates, long written) {
+    }
+
+    // Where the last stage puts the deduplicated rows, on its own thread
+    private interface Sink {
+        void add(CatalogRow row) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    // Import dump into a catalog file at output, which is replaced only once the import succeeds
+    public Summary run(Path dump, Path output) throws IOException {
+        Path parent = output.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path partial = Files.createTempFile(parent, output.getFileName().toString(), ".partial");
+        Summary summary;
+        try (BufferedWriter writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+            writer.write(CatalogRow.HEADER);
+            writer.write('\n');
+            summary = run(dump, "import-write", new Sink() {
+                @Override
+                public void add(CatalogRow row) throws IOException {
+                    row.write(writer);
+                }
+
+                @Override
+                public void finish() throws IOException {
+                    writer.flush();
+                }
+            });
+        } catch (IOException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return summary;
+    }
+
+    // Import dump into library as new segments. If the import fails, the segments added before
+    // the failure stay in the library.
+    public Summary run(Path dump, Library library) throws IOException {
+        Library.Ingest ingest = library.ingest();
+        return run(dump, "import-index", new Sink() {
+            @Override
+            public void add(CatalogRow row) throws IOException {
+                ingest.add(row);
+            }
+
+            @Override
+            public void finish() throws IOException {
+                ingest.finish();
+            }
+        });
+    }
+
+    private Summary run(Path dump, String sinkStage, Sink sink) throws IOException {
+        BlockingQueue<List<Object>> lines = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        BlockingQueue<List<Object>> parsed = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        BlockingQueue<List<Object>> normalized = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        BlockingQueue<List<Object>> unique = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+
+        try (InputStream in = open(dump);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            List<Thread> stages = new ArrayList<>();
+            stages.add(stage("import-read", () -> readLines(reader, lines)));
+            AtomicInteger parsersLeft = new AtomicInteger(parseWorkers);
+            for (int i = 0; i < parseWorkers; i++) {
+                stages.add(stage("import-parse-" + (i + 1),
+                        () -> map(lines, parsed, BulkImporter::parse, parsersLeft)));
+            }
+            stages.add(stage("import-normalize",
+                    () -> map(parsed, normalized, BulkImporter::normalize, new AtomicInteger(1))));
+            stages.add(stage("import-dedupe", () -> dedupe(normalized, unique)));
+            stages.add(stage(sinkStage, () -> store(unique, sink)));
+            // Every stage is listed before any starts, so a stage that fails at once still stops the rest
+            threads = List.copyOf(stages);
+            for (Thread thread : stages) {
+                thread.start();
+            }
+            long reported = 0;
+            for (Thread thread : stages) {
+                while (thread.isAlive()) {
+                    thread.join(PROGRESS_CHECK_MILLIS);
+                    long count = read.get();
+                    if (count / PROGRESS_EVERY > reported / PROGRESS_EVERY) {
+                        progress.report(count, written.get());
+                        reported = count;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopAll(e);
+        } catch (IOException e) {
+            stopAll(e);
+        } finally {
+            threads = List.of();
+        }
+        Throwable error = failure.get();
+        if (error != null) {
+            throw error instanceof IOException ? (IOException) error : new IOException("Import failed", error);
+        }
+        return new Summary(read.get(), rejected.get(), duplicates.get(), written.get());
+    }
+
+    private static InputStream open(Path dump) throws IOException {
+        InputStream in = Files.newInputStream(dump);
+        return dump.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    @FunctionalInterface
+    private interface StageBody {
+        void run() throws Exception;
+    }
+
+    // A stage's thread, not yet started. Any stage failing stops the whole pipeline; queues are
+    // unblocked by interrupting every thread.
+    private Thread stage(String name, StageBody body) {
+        return new Thread(() -> {
+            try {
+                body.run();
+            } catch (InterruptedException e) {
+                // Stopped because another stage failed
+            } catch (Exception | Error e) {
+                stopAll(e);
+            }
+        }, name);
+    }
+
+    private void stopAll(Throwable cause) {
+        if (failure.compareAndSet(null, cause)) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    private void readLines(BufferedReader reader, BlockingQueue<List<Object>> out) throws IOException, InterruptedException {
+        List<Object> batch = new ArrayList<>(BATCH_SIZE);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            batch.add(line);
+            if (batch.size() == BATCH_SIZE) {
+                out.put(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+            read.incrementAndGet();
+        }
+        if (!batch.isEmpty()) {
+            out.put(batch);
+        }
+        out.put(END);
+    }
+
+    // Apply step to every item; items it maps to null are dropped as rejected. With several
+    // workers on one queue, each passes END on to its siblings and the last one to finish
+    // forwards it downstream.
+    private void map(BlockingQueue<List<Object>> in, BlockingQueue<List<Object>> out,
+                     Function<Object, Object> step, AtomicInteger workersLeft) throws InterruptedException {
+        while (true) {
+            List<Object> batch = in.take();
+            if (batch == END) {
+                in.put(END);
+                if (workersLeft.decrementAndGet() == 0) {
+                    out.put(END);
+                }
+                return;
+            }
+            List<Object> results = new ArrayList<>(batch.size());
+            for (Object item : batch) {
+                Object result = step.apply(item);
+                if (result != null) {
+                    results.add(result);
+                } else {
+                    rejected.incrementAndGet();
+                }
+            }
+            out.put(results);
+        }
+    }
+
+    private void dedupe(BlockingQueue<List<Object>> in, BlockingQueue<List<Object>> out) throws InterruptedException {
+        LongHashSet seen = new LongHashSet();
+        while (true) {
+            List<Object> batch = in.take();
+            if (batch == END) {
+                out.put(END);
+                return;
+            }
+            List<Object> fresh = new ArrayList<>(batch.size());
+            for (Object item : batch) {
+                if (seen.add(identity((CatalogRow) item))) {
+                    fresh.add(item);
+                } else {
+                    duplicates.incrementAndGet();
+                }
+            }
+            out.put(fresh);
+        }
+    }
+
+    private void store(BlockingQueue<List<Object>> in, Sink sink) throws IOException, InterruptedException {
+        while (true) {
+            List<Object> batch = in.take();
+            if (batch == END) {
+                sink.finish();
+                return;
+            }
+            for (Object item : batch) {
+                sink.add((CatalogRow) item);
+            }
+            written.addAndGet(batch.size());
+        }
+    }
+
+    // A JSON record, an Open Library row ending in one, or a catalog TSV row; null if unreadable
+    static CatalogRow parse(Object item) {
+        String line = (String) item;
+        int json = line.startsWith("{") ? 0 : line.lastIndexOf("\t{") + 1;
+        boolean isJson = json > 0 || line.startsWith("{");
+        try {
+            return isJson ? DumpRecord.parse(line.substring(json)) : CatalogRow.parse(line);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Clean text so that it fits one TSV cell, split compound categories such as
+    // "Fiction / Fantasy / Epic", and drop blank or repeated values; entries without a title go
+    static CatalogRow normalize(Object item) {
+        CatalogRow entry = (CatalogRow) item;
+        String title = clean(entry.title());
+        if (title.isEmpty()) {
+            return null;
+        }
+        Set<String> categories = new LinkedHashSet<>();
+        for (String category : entry.categories()) {
+            for (String part : category.split("/")) {
+                String cleaned = clean(part);
+                if (!cleaned.isEmpty()) {
+                    categories.add(cleaned);
+                }
+            }
+        }
+        Set<String> authors = new LinkedHashSet<>();
+        for (String author : entry.authors()) {
+            String cleaned = clean(author);
+            if (!cleaned.isEmpty()) {
+                authors.add(cleaned);
+            }
+        }
+        return new CatalogRow(title, clean(entry.subtitle()), List.copyOf(authors), List.copyOf(categories),
+                clean(entry.publisher()), clean(entry.description()), entry.isbn13(),
+                Math.max(0, entry.averageRating()), Math.max(0, entry.ratingsCount()));
+    }
+
+    // Tabs, newlines and the list separator would break the row; runs of whitespace become one space
+    private static String clean(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || c == '|' || Character.isISOControl(c)) {
+                space = out.length() > 0;
+            } else {
+                if (space) {
+                    out.append(' ');
+                    space = false;
+                }
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static long identity(CatalogRow entry) {
+        if (entry.isbn13() != 0) {
+            return entry.isbn13();
+        }
+        String author = entry.authors().isEmpty() ? "" : entry.authors().get(0);
+        String key = Tokenizer.normalize(entry.title()) + '\u0000' + Tokenizer.normalize(author);
+        // 64-bit FNV-1a, with the top bit set so it cannot collide with an ISBN
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        return h | Long.MIN_VALUE;
+    }
+
+    // Reads one JSON record in either the Google Books volume or the Open Library shape
+    private static final class DumpRecord {
+        private static final String[] FIELDS = {
+                "volumeInfo", "title", "subtitle", "authors", "by_statement", "categories", "subjects",
+                "publisher", "publishers", "description", "industryIdentifiers", "isbn_13",
+                "averageRating", "ratingsCount"};
+
+        private String title = "";
+        private String subtitle = "";
+        private List<String> authors = List.of();
+        private String byStatement = "";
+        private final List<String> categories = new ArrayList<>();
+        private String publisher = "";
+        private String description = "";
+        private long isbn13;
+        private float averageRating;
+        private int ratingsCount;
+
+        static CatalogRow parse(String json) throws IOException {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            DumpRecord record = new DumpRecord();
+            record.readObject(reader);
+            List<String> authors = record.authors.isEmpty() && !record.byStatement.isEmpty()
+                    ? List.of(record.byStatement) : record.authors;
+            return new CatalogRow(record.title, record.subtitle, authors, record.categories, record.publisher,
+                    record.description, record.isbn13, record.averageRating, record.ratingsCount);
+        }
+
+        private void readObject(JsonReader json) throws IOException {
+            json.beginObject();
+            while (json.hasNext()) {
+                int field = json.nextName(FIELDS);
+                if (json.peek() == JsonReader.Token.NULL) {
+                    json.nextNull();
+                    continue;
+                }
+                switch (field) {
+                    case 0:
+                        readObject(json);
+                        break;
+                    case 1:
+                        title = json.nextString();
+                        break;
+                    case 2:
+                        subtitle = json.nextString();
+                        break;
+                    case 3:
+                        authors = readNames(json);
+                        break;
+                    case 4:
+                        byStatement = json.nextString();
+                        break;
+                    case 5:
+                    case 6:
+                        categories.addAll(readNames(json));
+                        break;
+                    case 7:
+                        publisher = json.nextString();
+                        break;
+                    case 8:
+                        List<String> publishers = readNames(json);
+                        publisher = publishers.isEmpty() ? publisher : publishers.get(0);
+                        break;
+                    case 9:
+                        description = readText(json);
+                        break;
+                    case 10:
+                        readIdentifiers(json);
+                        break;
+                    case 11:
+                        for (String isbn : readNames(json)) {
+                            isbn13 = isbn13 != 0 ? isbn13 : Book.parseIsbn(isbn);
+                        }
+                        break;
+                    case 12:
+                        averageRating = (float) json.nextDouble();
+                        break;
+                    case 13:
+                        ratingsCount = json.nextInt();
+                        break;
+                    default:
+                        json.skipValue();
+                }
+            }
+            json.endObject();
+        }
+
+        // Strings, or objects carrying a "name"; anything else is skipped
+        private static List<String> readNames(JsonReader json) throws IOException {
+            if (json.peek() != JsonReader.Token.BEGIN_ARRAY) {
+                json.skipValue();
+                return List.of();
+            }
+            List<String> names = new ArrayList<>(2);
+            json.beginArray();
+            while (json.hasNext()) {
+                String name = readText(json);
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+            json.endArray();
+            return names;
+        }
+
+        // A string, or the "name" or "value" of an object, as Open Library writes descriptions
+        private static String readText(JsonReader json) throws IOException {
+            JsonReader.Token token = json.peek();
+            if (token == JsonReader.Token.STRING) {
+                return json.nextString();
+            }
+            if (token != JsonReader.Token.BEGIN_OBJECT) {
+                json.skipValue();
+                return "";
+            }
+            String text = "";
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if ((name.equals("name") || name.equals("value")) && json.peek() == JsonReader.Token.STRING) {
+                    text = json.nextString();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+            return text;
+        }
+
+        private void readIdentifiers(JsonReader json) throws IOException {
+            if (json.peek() != JsonReader.Token.BEGIN_ARRAY) {
+                json.skipValue();
+                return;
+            }
+            json.beginArray();
+            while (json.hasNext()) {
+                String type = "";
+                String identifier = "";
+                json.beginObject();
+                while (json.hasNext()) {
+                    String name = json.nextName();
+                    if (name.equals("type")) {
+                        type = json.nextString();
+                    } else if (name.equals("identifier")) {
+                        identifier = json.nextString();
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+                if (type.equals("ISBN_13") && isbn13 == 0) {
+                    isbn13 = Book.parseIsbn(identifier);
+                }
+            }
+            json.endArray();
+        }
+    }
+
+    // Open-addressing set of longs; 0 is stored out of band
+    private static final class LongHashSet {
+        private long[] slots = new long[1 << 16];
+        private int size;
+        private boolean hasZero;
+
+        // Whether value was not yet in the set
+        boolean add(long value) {
+            if (value == 0) {
+                boolean added = !hasZero;
+                hasZero = true;
+                return added;
+            }
+            if (size * 2 >= slots.length) {
+                grow();
+            }
+            int mask = slots.length - 1;
+            for (int slot = mix(value) & mask; ; slot = (slot + 1) & mask) {
+                if (slots[slot] == value) {
+                    return false;
+                }
+                if (slots[slot] == 0) {
+                    slots[slot] = value;
+                    size++;
+                    return true;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            int mask = slots.length - 1;
+            for (long value : old) {
+                if (value != 0) {
+                    int slot = mix(value) & mask;
+                    while (slots[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    slots[slot] = value;
+                }
+            }
+        }
+
+        private static int mix(long value) {
+            long h = value * 0x9e3779b97f4a7c15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
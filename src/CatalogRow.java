@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+// One book in the tab-separated catalog layout of data/books.tsv, as plain strings: the columns
+// are title, subtitle, authors, categories, description, isbn13, averageRating, ratingsCount and
+// publisher, with authors and categories separated by '|'. The optional trailing columns may be
+// missing entirely. This is the one reader and writer of that layout, shared by Library, which
+// loads catalog files, and BulkImporter, which writes them and reads dumps in the same layout.
+public record CatalogRow(String title, String subtitle, List<String> authors, List<String> categories,
+                         String publisher, String description, long isbn13, float averageRating, int ratingsCount) {
+    public static final String HEADER =
+            "# title\tsubtitle\tauthors\tcategories\tdescription\tisbn13\taverageRating\tratingsCount\tpublisher";
+
+    // The row on a line of a catalog file, or null for a blank line, a comment or a short row
+    public static CatalogRow parse(String line) {
+        if (line.isBlank() || line.startsWith("#")) {
+            return null;
+        }
+        String[] columns = line.split("\t", -1);
+        if (columns.length < 5) {
+            return null;
+        }
+        return new CatalogRow(columns[0], columns[1], splitList(columns[2]), splitList(columns[3]),
+                column(columns, 8), columns[4], Book.parseIsbn(column(columns, 5)), parseFloat(column(columns, 6)),
+                (int) parseFloat(column(columns, 7)));
+    }
+
+    // The row as a catalog book with the given id
+    public Book toBook(int id) {
+        return new Book(id, title, subtitle, authors, categories, publisher, description, isbn13, averageRating,
+                ratingsCount);
+    }
+
+    // Write the row as one line; the text must already be free of tabs, newlines and '|' in lists
+    public void write(Writer out) throws IOException {
+        out.write(title);
+        out.write('\t');
+        out.write(subtitle);
+        out.write('\t');
+        out.write(String.join("|", authors));
+        out.write('\t');
+        out.write(String.join("|", categories));
+        out.write('\t');
+        out.write(description);
+        out.write('\t');
+        out.write(isbn13 == 0 ? "" : Long.toString(isbn13));
+        out.write('\t');
+        out.write(averageRating == 0 ? "" : Float.toString(averageRating));
+        out.write('\t');
+        out.write(ratingsCount == 0 ? "" : Integer.toString(ratingsCount));
+        out.write('\t');
+        out.write(publisher);
+        out.write('\n');
+    }
+
+    private static String column(String[] columns, int index) {
+        return index < columns.length ? columns[index].trim() : "";
+    }
+
+    private static float parseFloat(String column) {
+        try {
+            return column.isEmpty() ? 0 : Float.parseFloat(column);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static List<String> splitList(String column) {
+        return column.isEmpty() ? List.of() : Arrays.asList(column.split("\\|"));
+    }
+}
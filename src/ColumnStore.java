@@ -0,0 +1,471 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Column-oriented catalog kept outside the Java heap. Every field is its own tightly packed
+// column in a direct buffer: fixed-width columns (ISBN, rating, ratings count, publisher) hold one
+// value per row, multi-valued ones (authors, genres) are an offsets column plus a flat column of
+// dictionary ids, and text fields are an offsets column plus a UTF-8 byte column. The garbage
+// collector sees a handful of buffer objects no matter how many books are stored, and filters
+// scan primitive columns front to back without creating a Book; one is built only for a row
+// that is actually returned. Each column is limited to 2 GB, as a single buffer.
+//
+// A store can be written to a segment file and mapped back read-only, so the columns are paged
+// in by the OS instead of being read. Dictionary ids are process-local, so a segment file carries
+// its own small dictionaries of the authors, genres and publishers it uses; a mapped store
+// translates those segment ids to the process-wide ones as rows are read.
+//
+// Segment file layout: a HEADER_SIZE header (magic, version, byte order, row count, dictionary
+// offset, the byte length of each column, then the offset and length of the index section), the
+// columns in constructor order each starting on an 8-byte boundary, the three dictionaries as a
+// count and length-prefixed UTF-8 strings, and last, on an 8-byte boundary, the index section
+// the segment's search indexes are stored in (see IndexFile). Columns are written in native byte
+// order and only mapped on a machine that matches. Version 1 files have no index section, and
+// version 2 files one in an older layout; the indexes of both are built again when opened.
+public final class ColumnStore {
+    private static final long MAGIC = 0x426f6f6b53656731L; // "BookSeg1"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 256;
+    private static final int COLUMNS = 14;
+    // Positions of the dictionary-id columns in the column order
+    private static final int PUBLISHERS = 3;
+    private static final int AUTHOR_IDS = 5;
+    private static final int GENRE_IDS = 7;
+    private static final int COPY_CHUNK = 1 << 16;
+
+    private final int rows;
+    private final ByteBuffer isbns;
+    private final ByteBuffer ratings;
+    private final ByteBuffer ratingCounts;
+    private final ByteBuffer publishers;
+    private final ByteBuffer authorStarts;
+    private final ByteBuffer authorIds;
+    private final ByteBuffer genreStarts;
+    private final ByteBuffer genreIds;
+    private final ByteBuffer titleStarts;
+    private final ByteBuffer titles;
+    private final ByteBuffer subtitleStarts;
+    private final ByteBuffer subtitles;
+    private final ByteBuffer descriptionStarts;
+    private final ByteBuffer descriptions;
+    // Segment id to process id for a mapped store; null when the columns hold process ids already
+    private final int[] authorMap;
+    private final int[] genreMap;
+    private final int[] publisherMap;
+    // Index section of the segment file the store was mapped from, or null if there is none
+    private final ByteBuffer indexes;
+
+    private ColumnStore(int rows, ByteBuffer[] columns) {
+        this(rows, columns, null, null, null, null);
+    }
+
+    private ColumnStore(int rows, ByteBuffer[] columns, int[] authorMap, int[] genreMap, int[] publisherMap,
+                        ByteBuffer indexes) {
+        this.rows = rows;
+        this.isbns = columns[0];
+        this.ratings = columns[1];
+        this.ratingCounts = columns[2];
+        this.publishers = columns[3];
+        this.authorStarts = columns[4];
+        this.authorIds = columns[5];
+        this.genreStarts = columns[6];
+        this.genreIds = columns[7];
+        this.titleStarts = columns[8];
+        this.titles = columns[9];
+        this.subtitleStarts = columns[10];
+        this.subtitles = columns[11];
+        this.descriptionStarts = columns[12];
+        this.descriptions = columns[13];
+        this.authorMap = authorMap;
+        this.genreMap = genreMap;
+        this.publisherMap = publisherMap;
+        this.indexes = indexes;
+    }
+
+    // Store holding books in order; row i is the book with id i
+    public static ColumnStore of(List<Book> books) {
+        Builder builder = new Builder();
+        for (Book book : books) {
+            builder.add(book);
+        }
+        return builder.build();
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    // The index section mapped with the columns, in native byte order, or null
+    public ByteBuffer indexes() {
+        return indexes;
+    }
+
+    // The book in row, materialized from its columns
+    public Book book(int row) {
+        return book(row, row);
+    }
+
+    // The book in row, carrying id as its catalog id
+    public Book book(int row, int id) {
+        return new Book(id, title(row), subtitle(row), ids(authorStarts, authorIds, authorMap, row),
+                ids(genreStarts, genreIds, genreMap, row), global(publisherMap, publishers.getInt(row * 4)),
+                bytes(descriptionStarts, descriptions, row), isbns.getLong(row * 8),
+                ratings.getFloat(row * 4), ratingCounts.getInt(row * 4));
+    }
+
+    public String title(int row) {
+        return text(titleStarts, titles, row);
+    }
+
+    public String subtitle(int row) {
+        return text(subtitleStarts, subtitles, row);
+    }
+
+    public String description(int row) {
+        return Book.decodeDescription(bytes(descriptionStarts, descriptions, row));
+    }
+
+    public List<String> authors(int row) {
+        return Book.lookup(Book.AUTHORS, ids(authorStarts, authorIds, authorMap, row));
+    }
+
+    public List<String> categories(int row) {
+        return Book.lookup(Book.GENRES, ids(genreStarts, genreIds, genreMap, row));
+    }
+
+    private static int[] ids(ByteBuffer starts, ByteBuffer ids, int[] map, int row) {
+        int start = starts.getInt(row * 4);
+        int end = starts.getInt(row * 4 + 4);
+        int[] values = new int[end - start];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = global(map, ids.getInt((start + i) * 4));
+        }
+        return values;
+    }
+
+    // Negative ids (no publisher) are left alone
+    private static int global(int[] map, int id) {
+        return map == null || id < 0 ? id : map[id];
+    }
+
+    // Write the store to a segment file; the file appears under its name only once complete
+    public void write(Path file) throws IOException {
+        write(file, null);
+    }
+
+    // As write(Path), with an index section filled by indexes
+    public void write(Path file, IndexFile.Source indexes) throws IOException {
+        Path partial = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteBuffer[] columns = columns();
+        StringDictionary[] dictionaries = {new StringDictionary(), new StringDictionary(), new StringDictionary()};
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = HEADER_SIZE;
+            for (int c = 0; c < COLUMNS; c++) {
+                channel.position(position);
+                if (c == AUTHOR_IDS) {
+                    writeIds(channel, columns[c], authorMap, Book.AUTHORS, dictionaries[0]);
+                } else if (c == GENRE_IDS) {
+                    writeIds(channel, columns[c], genreMap, Book.GENRES, dictionaries[1]);
+                } else if (c == PUBLISHERS) {
+                    writeIds(channel, columns[c], publisherMap, Book.PUBLISHERS, dictionaries[2]);
+                } else {
+                    writeFully(channel, columns[c].duplicate());
+                }
+                position = align(position + columns[c].limit());
+            }
+            long dictionaryOffset = position;
+            channel.position(dictionaryOffset);
+            for (StringDictionary dictionary : dictionaries) {
+                writeDictionary(channel, dictionary);
+            }
+            long indexOffset = 0;
+            long indexLength = 0;
+            if (indexes != null) {
+                indexOffset = align(channel.position());
+                channel.position(indexOffset);
+                IndexFile.Writer out = new IndexFile.Writer(channel);
+                indexes.write(out);
+                indexLength = out.finish();
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            header.putLong(MAGIC).putInt(VERSION).put((byte) (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0))
+                    .put(new byte[3]).putInt(rows).putInt(COLUMNS).putLong(dictionaryOffset);
+            for (ByteBuffer column : columns) {
+                header.putLong(column.limit());
+            }
+            header.putLong(indexOffset).putLong(indexLength);
+            header.clear();
+            channel.position(0);
+            writeFully(channel, header);
+            channel.force(true);
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Map a segment file written by write(Path), interning its dictionaries into the process ones
+    public static ColumnStore map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException(file + " is not a BookSage segment");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            if (header.getLong() != MAGIC) {
+                throw new IOException(file + " is not a BookSage segment");
+            }
+            int version = header.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException(file + " is not a BookSage segment");
+            }
+            ByteOrder order = header.get() == 1 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            if (order != ByteOrder.nativeOrder()) {
+                throw new IOException(file + " was written with a different byte order");
+            }
+            header.position(header.position() + 3);
+            int rows = header.getInt();
+            int columnCount = header.getInt();
+            long dictionaryOffset = header.getLong();
+            if (columnCount != COLUMNS || dictionaryOffset > size) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+
+            ByteBuffer[] columns = new ByteBuffer[COLUMNS];
+            long position = HEADER_SIZE;
+            for (int c = 0; c < COLUMNS; c++) {
+                long length = header.getLong();
+                if (length < 0 || position + length > dictionaryOffset) {
+                    throw new IOException(file + " is truncated or corrupt");
+                }
+                columns[c] = channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.nativeOrder());
+                position = align(position + length);
+            }
+            ByteBuffer indexes = null;
+            if (version >= 2) {
+                long indexOffset = header.getLong();
+                long indexLength = header.getLong();
+                if (indexLength < 0 || indexLength > Integer.MAX_VALUE
+                        || (indexLength > 0 && (indexOffset < dictionaryOffset || indexOffset + indexLength > size))) {
+                    throw new IOException(file + " is truncated or corrupt");
+                }
+                if (indexLength > 0 && version == VERSION) {
+                    indexes = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, indexLength)
+                            .order(ByteOrder.nativeOrder());
+                }
+            }
+            ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, dictionaryOffset, size - dictionaryOffset)
+                    .order(ByteOrder.nativeOrder());
+            int[] authorMap = readDictionary(tail, Book.AUTHORS);
+            int[] genreMap = readDictionary(tail, Book.GENRES);
+            int[] publisherMap = readDictionary(tail, Book.PUBLISHERS);
+            return new ColumnStore(rows, columns, authorMap, genreMap, publisherMap, indexes);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException(file + " is truncated or corrupt", e);
+        }
+    }
+
+    private ByteBuffer[] columns() {
+        return new ByteBuffer[]{
+                isbns, ratings, ratingCounts, publishers, authorStarts, authorIds, genreStarts, genreIds,
+                titleStarts, titles, subtitleStarts, subtitles, descriptionStarts, descriptions};
+    }
+
+    // Rewrite an id column in the file's own dictionary, numbering values in order of first use
+    private static void writeIds(FileChannel channel, ByteBuffer ids, int[] map, StringDictionary names,
+                                 StringDictionary segment) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(COPY_CHUNK).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < ids.limit(); i += 4) {
+            int id = global(map, ids.getInt(i));
+            chunk.putInt(id < 0 ? id : segment.id(names.value(id)));
+            if (!chunk.hasRemaining()) {
+                chunk.flip();
+                writeFully(channel, chunk);
+                chunk.clear();
+            }
+        }
+        chunk.flip();
+        writeFully(channel, chunk);
+    }
+
+    private static void writeDictionary(FileChannel channel, StringDictionary dictionary) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(COPY_CHUNK).order(ByteOrder.nativeOrder());
+        chunk.putInt(dictionary.size());
+        for (int id = 0; id < dictionary.size(); id++) {
+            byte[] utf8 = dictionary.value(id).getBytes(StandardCharsets.UTF_8);
+            if (chunk.remaining() < 4 + utf8.length) {
+                chunk.flip();
+                writeFully(channel, chunk);
+                chunk = ByteBuffer.allocate(Math.max(COPY_CHUNK, 4 + utf8.length)).order(ByteOrder.nativeOrder());
+            }
+            chunk.putInt(utf8.length).put(utf8);
+        }
+        chunk.flip();
+        writeFully(channel, chunk);
+    }
+
+    // Intern each stored value and return segment id to process id
+    private static int[] readDictionary(ByteBuffer in, StringDictionary process) {
+        int[] map = new int[in.getInt()];
+        for (int i = 0; i < map.length; i++) {
+            byte[] utf8 = new byte[in.getInt()];
+            in.get(utf8);
+            String value = new String(utf8, StandardCharsets.UTF_8);
+            map[i] = process.id(value);
+        }
+        return map;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static byte[] bytes(ByteBuffer starts, ByteBuffer data, int row) {
+        int start = starts.getInt(row * 4);
+        byte[] value = new byte[starts.getInt(row * 4 + 4) - start];
+        data.get(start, value);
+        return value;
+    }
+
+    private static String text(ByteBuffer starts, ByteBuffer data, int row) {
+        int start = starts.getInt(row * 4);
+        int end = starts.getInt(row * 4 + 4);
+        if (start == end) {
+            return "";
+        }
+        byte[] utf8 = new byte[end - start];
+        data.get(start, utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    // Appends rows to growable off-heap columns
+    public static final class Builder {
+        private int rows;
+        private final Column isbns = new Column(8);
+        private final Column ratings = new Column(4);
+        private final Column ratingCounts = new Column(4);
+        private final Column publishers = new Column(4);
+        private final Column authorStarts = Column.offsets();
+        private final Column authorIds = new Column(4);
+        private final Column genreStarts = Column.offsets();
+        private final Column genreIds = new Column(4);
+        private final Column titleStarts = Column.offsets();
+        private final Column titles = new Column(1);
+        private final Column subtitleStarts = Column.offsets();
+        private final Column subtitles = new Column(1);
+        private final Column descriptionStarts = Column.offsets();
+        private final Column descriptions = new Column(1);
+
+        // The book's own id is ignored; it becomes the next row
+        public Builder add(Book book) {
+            book = book.interned();
+            isbns.putLong(book.isbn13());
+            ratings.putFloat(book.averageRating());
+            ratingCounts.putInt(book.ratingsCount());
+            publishers.putInt(book.publisherId());
+            authorIds.putInts(book.authorIds());
+            authorStarts.putInt(authorIds.size / 4);
+            genreIds.putInts(book.genreIds());
+            genreStarts.putInt(genreIds.size / 4);
+            titles.putBytes(book.title().getBytes(StandardCharsets.UTF_8));
+            titleStarts.putInt(titles.size);
+            subtitles.putBytes(book.subtitle().getBytes(StandardCharsets.UTF_8));
+            subtitleStarts.putInt(subtitles.size);
+            descriptions.putBytes(book.encodedDescription());
+            descriptionStarts.putInt(descriptions.size);
+            rows++;
+            return this;
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        public ColumnStore build() {
+            return new ColumnStore(rows, new ByteBuffer[]{
+                    isbns.seal(), ratings.seal(), ratingCounts.seal(), publishers.seal(),
+                    authorStarts.seal(), authorIds.seal(), genreStarts.seal(), genreIds.seal(),
+                    titleStarts.seal(), titles.seal(), subtitleStarts.seal(), subtitles.seal(),
+                    descriptionStarts.seal(), descriptions.seal()});
+        }
+    }
+
+    // Direct buffer that doubles when full; written only through absolute puts
+    private static final class Column {
+        private ByteBuffer buffer;
+        private int size;
+
+        Column(int width) {
+            buffer = ByteBuffer.allocateDirect(width * 64).order(ByteOrder.nativeOrder());
+        }
+
+        // Offsets columns start with the 0 that opens row 0
+        static Column offsets() {
+            Column column = new Column(4);
+            column.putInt(0);
+            return column;
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            buffer.putInt(size, value);
+            size += 4;
+        }
+
+        void putLong(long value) {
+            ensure(8);
+            buffer.putLong(size, value);
+            size += 8;
+        }
+
+        void putFloat(float value) {
+            ensure(4);
+            buffer.putFloat(size, value);
+            size += 4;
+        }
+
+        void putInts(int[] values) {
+            for (int value : values) {
+                putInt(value);
+            }
+        }
+
+        void putBytes(byte[] values) {
+            ensure(values.length);
+            buffer.put(size, values);
+            size += values.length;
+        }
+
+        // A read-only view trimmed to what was written
+        ByteBuffer seal() {
+            return buffer.slice(0, size).asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+        }
+
+        private void ensure(int extra) {
+            if ((long) size + extra > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Column exceeds 2 GB");
+            }
+            if (size + extra <= buffer.capacity()) {
+                return;
+            }
+            int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max((long) buffer.capacity() * 2, (long) size + extra));
+            ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+            grown.put(0, buffer, 0, size);
+            buffer = grown;
+        }
+    }
+}
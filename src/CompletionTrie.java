@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Immutable compressed (radix) trie for weighted prefix completion.
+// Nodes are numbered in breadth-first order and stored in flat primitive arrays, so the
+// children of node n are nodes firstChild[n] .. firstChild[n + 1] - 1 and the edge label of
+// node n is labels[labelStart[n] .. labelStart[n + 1]). Keys are normalized UTF-8 bytes and
+// each key carries a display string and a weight; lookups return the heaviest completions.
+// Instances never change after build(), so they can be shared between threads freely. The arrays
+// are buffers, so a trie stored in a segment file is used straight from the mapping.
+public final class CompletionTrie {
+    private static final int ROOT = 0;
+
+    private final ByteBuffer labels;
+    private final IntBuffer labelStart;
+    private final IntBuffer firstChild;
+    private final IntBuffer maxWeight;
+    // Output index for keys that end at a node, or -1
+    private final IntBuffer output;
+
+    private final IntBuffer weights;
+    private final StringTable displays;
+
+    private CompletionTrie(ByteBuffer labels, IntBuffer labelStart, IntBuffer firstChild, IntBuffer maxWeight,
+                           IntBuffer output, IntBuffer weights, StringTable displays) {
+        this.labels = labels;
+        this.labelStart = labelStart;
+        this.firstChild = firstChild;
+        this.maxWeight = maxWeight;
+        this.output = output;
+        this.weights = weights;
+        this.displays = displays;
+    }
+
+    // Store the trie in a segment's index section
+    void write(IndexFile.Writer out) throws IOException {
+        out.bytes(labels);
+        out.ints(labelStart);
+        out.ints(firstChild);
+        out.ints(maxWeight);
+        out.ints(output);
+        out.ints(weights);
+        out.strings(displays);
+    }
+
+    // The trie write() stored, over the mapped section
+    static CompletionTrie read(IndexFile.Reader in) throws IOException {
+        ByteBuffer labels = in.bytes();
+        IntBuffer labelStart = in.ints();
+        IntBuffer firstChild = in.ints();
+        IntBuffer maxWeight = in.ints();
+        IntBuffer output = in.ints();
+        IntBuffer weights = in.ints();
+        StringTable displays = in.strings();
+        int nodes = output.limit();
+        if (labelStart.limit() != nodes + 1 || firstChild.limit() != nodes + 1 || maxWeight.limit() != nodes
+                || displays.size() != weights.limit()) {
+            throw new IOException("Segment indexes are truncated or corrupt");
+        }
+        return new CompletionTrie(labels, labelStart, firstChild, maxWeight, output, weights, displays);
+    }
+
+    public int keyCount() {
+        return weights.limit();
+    }
+
+    public int nodeCount() {
+        return output.limit();
+    }
+
+    // A display string and the summed weight of its key
+    public record Completion(String text, int weight) {
+    }
+
+    // Up to k display strings whose normalized key starts with the prefix, heaviest first
+    public List<String> complete(String prefix, int k) {
+        List<Completion> completions = completions(prefix, k);
+        List<String> texts = new ArrayList<>(completions.size());
+        for (Completion completion : completions) {
+            texts.add(completion.text());
+        }
+        return texts;
+    }
+
+    // As complete, with the weights, so completions from several tries can be merged
+    public List<Completion> completions(String prefix, int k) {
+        if (k <= 0 || output.limit() == 0) {
+            return List.of();
+        }
+        int node = descend(Tokenizer.normalize(prefix).getBytes(StandardCharsets.UTF_8));
+        if (node < 0) {
+            return List.of();
+        }
+
+        // Best-first walk: an entry's priority is the best weight reachable from it, so entries
+        // come off the queue in descending weight order and we can stop after k outputs
+        PriorityQueue<Long> queue = new PriorityQueue<>(Collections.reverseOrder());
+        queue.add(entry(maxWeight.get(node), node, false));
+        List<Completion> results = new ArrayList<>(k);
+        while (!queue.isEmpty() && results.size() < k) {
+            long top = queue.poll();
+            int slot = Integer.MAX_VALUE - (int) top;
+            int current = slot >>> 1;
+            if ((slot & 1) == 1) {
+                int out = output.get(current);
+                results.add(new Completion(displays.get(out), weights.get(out)));
+                continue;
+            }
+            if (output.get(current) >= 0) {
+                queue.add(entry(weights.get(output.get(current)), current, true));
+            }
+            for (int child = firstChild.get(current); child < firstChild.get(current + 1); child++) {
+                queue.add(entry(maxWeight.get(child), child, false));
+            }
+        }
+        return results;
+    }
+
+    // The weight of the key text normalizes to, or 0 if it is not in the trie
+    public int weight(String text) {
+        byte[] key = Tokenizer.normalize(text).trim().getBytes(StandardCharsets.UTF_8);
+        int node = ROOT;
+        int matched = 0;
+        while (matched < key.length) {
+            int child = findChild(node, key[matched]);
+            if (child < 0) {
+                return 0;
+            }
+            int length = labelStart.get(child + 1) - labelStart.get(child);
+            if (length > key.length - matched
+                    || labels.slice(labelStart.get(child), length).compareTo(ByteBuffer.wrap(key, matched, length)) != 0) {
+                return 0;
+            }
+            matched += length;
+            node = child;
+        }
+        return output.get(node) >= 0 ? weights.get(output.get(node)) : 0;
+    }
+
+    // Priority-queue entry: weight in the high bits; lower node numbers win ties
+    private static long entry(int weight, int node, boolean terminal) {
+        int slot = (node << 1) | (terminal ? 1 : 0);
+        return ((long) weight << 32) | (Integer.MAX_VALUE - slot);
+    }
+
+    // Node whose subtree holds every key starting with prefix, or -1 if there is none
+    private int descend(byte[] prefix) {
+        int node = ROOT;
+        int matched = 0;
+        while (matched < prefix.length) {
+            int child = findChild(node, prefix[matched]);
+            if (child < 0) {
+                return -1;
+            }
+            for (int i = labelStart.get(child); i < labelStart.get(child + 1) && matched < prefix.length; i++) {
+                if (labels.get(i) != prefix[matched++]) {
+                    return -1;
+                }
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    // Children are sorted by the first byte of their label, so binary search them
+    private int findChild(int node, byte first) {
+        int low = firstChild.get(node);
+        int high = firstChild.get(node + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Integer.compare(labels.get(labelStart.get(mid)) & 0xFF, first & 0xFF);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Collects keys in any order; repeated keys add up their weights and keep the first display string
+    public static final class Builder {
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final List<String> displays = new ArrayList<>();
+        private final IntList weights = new IntList();
+
+        public Builder add(String text, int weight) {
+            String key = Tokenizer.normalize(text).trim();
+            if (key.isEmpty()) {
+                return this;
+            }
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                slots.put(key, displays.size());
+                displays.add(text.trim());
+                weights.add(weight);
+            } else {
+                weights.set(slot, weights.get(slot) + weight);
+            }
+            return this;
+        }
+
+        public CompletionTrie build() {
+            int count = displays.size();
+            byte[][] keys = new byte[count][];
+            Integer[] order = new Integer[count];
+            int[] keyWeights = new int[count];
+            slots.forEach((key, slot) -> keys[slot] = key.getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+                keyWeights[i] = weights.get(i);
+            }
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+
+            // Outputs are stored in key order so the trie needs no back-references
+            int[] outWeights = new int[count];
+            String[] outDisplays = new String[count];
+            byte[][] sorted = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = keys[order[i]];
+                outWeights[i] = keyWeights[order[i]];
+                outDisplays[i] = displays.get(order[i]);
+            }
+            return layout(sorted, outWeights, StringTable.of(outDisplays));
+        }
+
+        // Breadth-first construction; a node covers sorted keys [lo, hi) that share their first depth bytes
+        private static CompletionTrie layout(byte[][] keys, int[] weights, StringTable displays) {
+            ByteSink labels = new ByteSink();
+            IntList labelStart = new IntList();
+            IntList firstChild = new IntList();
+            IntList output = new IntList();
+
+            // Each pending node: {lo, hi, parentDepth, depth}
+            ArrayDeque<int[]> pending = new ArrayDeque<>();
+            pending.add(new int[]{0, keys.length, 0, 0});
+            int nextNode = 1;
+            while (!pending.isEmpty()) {
+                int[] node = pending.poll();
+                int lo = node[0];
+                int hi = node[1];
+                int depth = node[3];
+                labelStart.add(labels.size());
+                if (hi > lo) {
+                    labels.write(keys[lo], node[2], depth);
+                }
+                firstChild.add(nextNode);
+
+                // Sorted order puts the key that ends exactly here first
+                int rest = lo;
+                if (rest < hi && keys[rest].length == depth) {
+                    output.add(rest++);
+                } else {
+                    output.add(-1);
+                }
+                while (rest < hi) {
+                    byte b = keys[rest][depth];
+                    int end = rest + 1;
+                    while (end < hi && keys[end][depth] == b) {
+                        end++;
+                    }
+                    pending.add(new int[]{rest, end, depth, commonPrefix(keys[rest], keys[end - 1])});
+                    nextNode++;
+                    rest = end;
+                }
+            }
+            labelStart.add(labels.size());
+            firstChild.add(nextNode);
+
+            // Subtree maxima, computed bottom-up: children always have larger numbers than parents
+            int nodes = output.size();
+            int[] out = output.toArray();
+            int[] children = firstChild.toArray();
+            int[] maxWeight = new int[nodes];
+            for (int n = nodes - 1; n >= 0; n--) {
+                int best = out[n] >= 0 ? weights[out[n]] : 0;
+                for (int c = children[n]; c < children[n + 1]; c++) {
+                    best = Math.max(best, maxWeight[c]);
+                }
+                maxWeight[n] = best;
+            }
+            return new CompletionTrie(ByteBuffer.wrap(labels.toArray()), IntBuffer.wrap(labelStart.toArray()),
+                    IntBuffer.wrap(children), IntBuffer.wrap(maxWeight), IntBuffer.wrap(out), IntBuffer.wrap(weights),
+                    displays);
+        }
+
+        private static int commonPrefix(byte[] a, byte[] b) {
+            int mismatch = Arrays.mismatch(a, b);
+            return mismatch < 0 ? a.length : mismatch;
+        }
+    }
+
+    // Minimal growable byte buffer
+    private static final class ByteSink {
+        private byte[] bytes = new byte[64];
+        private int size;
+
+        // Append source[from .. to)
+        void write(byte[] source, int from, int to) {
+            int length = to - from;
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+            System.arraycopy(source, from, bytes, size, length);
+            size += length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
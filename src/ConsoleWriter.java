@@ -0,0 +1,175 @@
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+// Console output that is collected and encoded in place, then handed to the stream in one
+// write per flush(). System.out locks, encodes into a fresh array and, being autoflushing, writes
+// on every println; a menu of eight lines was eight system calls. Here text goes into a reusable
+// char buffer, is encoded into a reusable byte buffer when that fills or on flush(), and reaches
+// the stream as one write, so a full response costs one call and no garbage. Callers flush once
+// per response, before waiting on input. Not thread-safe: one writer belongs to one thread.
+public final class ConsoleWriter extends Writer {
+    private static final int BUFFER_CHARS = 8192;
+    private static final char[] DIGITS = "0123456789".toCharArray();
+
+    private final PrintStream out;
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_CHARS);
+    private final ByteBuffer bytes;
+
+    // Writes to a PrintStream rather than its file descriptor so that output still interleaves
+    // correctly with anything else printed to the same stream
+    public ConsoleWriter(PrintStream out, Charset charset) {
+        this.out = out;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate((int) Math.ceil(BUFFER_CHARS * (double) encoder.maxBytesPerChar()));
+    }
+
+    // Standard output in the platform encoding, as System.out would write it
+    public static ConsoleWriter stdout() {
+        return new ConsoleWriter(System.out, Charset.defaultCharset());
+    }
+
+    public ConsoleWriter print(char c) {
+        if (!chars.hasRemaining()) {
+            encode();
+        }
+        chars.put(c);
+        return this;
+    }
+
+    public ConsoleWriter print(CharSequence text) {
+        return print(text, 0, text.length());
+    }
+
+    public ConsoleWriter print(CharSequence text, int start, int end) {
+        int i = start;
+        while (i < end) {
+            if (!chars.hasRemaining()) {
+                encode();
+            }
+            int n = Math.min(end - i, chars.remaining());
+            if (text instanceof String) {
+                // Copies straight into the buffer's array rather than a char at a time
+                ((String) text).getChars(i, i + n, chars.array(), chars.position());
+                chars.position(chars.position() + n);
+            } else {
+                for (int j = i; j < i + n; j++) {
+                    chars.put(text.charAt(j));
+                }
+            }
+            i += n;
+        }
+        return this;
+    }
+
+    // Decimal digits without going through a String
+    public ConsoleWriter print(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                return print(Long.toString(value));
+            }
+            print('-');
+            value = -value;
+        }
+        long scale = 1;
+        while (value / scale >= 10) {
+            scale *= 10;
+        }
+        for (; scale > 0; scale /= 10) {
+            print(DIGITS[(int) (value / scale % 10)]);
+        }
+        return this;
+    }
+
+    // The same character n times, e.g. a rule of dashes
+    public ConsoleWriter repeat(char c, int n) {
+        for (int i = 0; i < n; i++) {
+            print(c);
+        }
+        return this;
+    }
+
+    public ConsoleWriter println() {
+        return print('\n');
+    }
+
+    public ConsoleWriter println(CharSequence text) {
+        return print(text).print('\n');
+    }
+
+    @Override
+    public void write(int c) {
+        print((char) c);
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) {
+        while (length > 0) {
+            if (!chars.hasRemaining()) {
+                encode();
+            }
+            int n = Math.min(length, chars.remaining());
+            chars.put(buffer, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void write(String text, int offset, int length) {
+        print(text, offset, offset + length);
+    }
+
+    @Override
+    public ConsoleWriter append(CharSequence text) {
+        return print(text);
+    }
+
+    @Override
+    public ConsoleWriter append(CharSequence text, int start, int end) {
+        return print(text, start, end);
+    }
+
+    @Override
+    public ConsoleWriter append(char c) {
+        return print(c);
+    }
+
+    // Hand everything printed so far to the stream and flush it
+    @Override
+    public void flush() {
+        encode();
+        out.flush();
+    }
+
+    // Flushes but leaves the stream open; it belongs to whoever created this writer
+    @Override
+    public void close() {
+        flush();
+    }
+
+    // Encode the buffered chars and write the bytes. A high surrogate at the very end stays
+    // buffered until its pair arrives.
+    private void encode() {
+        chars.flip();
+        while (encoder.encode(chars, bytes, false).isOverflow()) {
+            drain();
+        }
+        drain();
+        chars.compact();
+    }
+
+    private void drain() {
+        if (bytes.position() > 0) {
+            out.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+        }
+    }
+}
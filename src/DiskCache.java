@@ -0,0 +1,434 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+// Persistent second cache tier for upstream result pages, kept in one memory-mapped segment file.
+// Records are only ever appended; a newer record for a key shadows the older one. The only thing
+// on the heap is an open-addressing hash index from key hash to record offset, rebuilt by
+// scanning the segment when the file is opened, so restarts begin warm and cached books never
+// count against the heap. When the segment fills up, the live records are compacted into a
+// fresh file; if that does not free enough room the cache starts over empty.
+// Every read checks the record's CRC, and a record that fails it is treated as a miss. Only one
+// process may have the cache open: a lock on a sibling file is held until close(), since the
+// segment file itself is replaced by compaction.
+//
+// Layout: a 64-byte header (magic, end of the last complete record, version), then records of
+//   int payloadLength, int crc32(payload), long storedAtMillis, payload
+// where the payload is the serialized QueryKey followed by the serialized books.
+public final class DiskCache implements AutoCloseable {
+    private static final long MAGIC = 0x426f6f6b53616765L; // "BookSage"
+    // Bumped whenever the record layout changes; a segment of another version starts over empty
+    private static final int VERSION = 3;
+    private static final int VERSION_OFFSET = 12;
+    private static final int HEADER_SIZE = 64;
+    private static final int END_OFFSET = 8;
+    private static final int RECORD_HEADER = 16;
+    // Key bytes besides the query itself: its length, the type, startIndex and count
+    private static final int KEY_OVERHEAD = 13;
+
+    private final Path file;
+    private final int capacity;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final FileChannel lockChannel;
+    private final FileLock processLock;
+
+    // Guarded by lock
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int end;
+    private long[] hashes;
+    private int[] offsets;
+    private int entries;
+
+    private DiskCache(Path file, int capacity, FileChannel lockChannel, FileLock processLock) {
+        this.file = file;
+        this.capacity = capacity;
+        this.lockChannel = lockChannel;
+        this.processLock = processLock;
+    }
+
+    // Open or create the segment file; capacity is the most bytes it may grow to. Fails if another
+    // process has the cache open.
+    public static DiskCache open(Path file, int capacity) throws IOException {
+        if (capacity <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Capacity too small: " + capacity);
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock processLock = tryLock(lockChannel);
+            if (processLock == null) {
+                throw new IOException(file + " is in use by another process");
+            }
+            DiskCache cache = new DiskCache(file, capacity, lockChannel, processLock);
+            cache.map();
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    // The lock, or null if another process (or another DiskCache in this one) holds it
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    // The cached books for key with the time they were stored, or null; also null if the record
+    // no longer matches its CRC
+    public Entry get(QueryKey key) {
+        byte[] keyBytes = encodeKey(key);
+        long hash = hash(keyBytes);
+        lock.readLock().lock();
+        try {
+            int offset = find(hash, keyBytes);
+            if (offset < 0) {
+                return null;
+            }
+            int length = segment.getInt(offset);
+            if (length < keyBytes.length || offset + RECORD_HEADER + length > end) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(segment.slice(offset + RECORD_HEADER, length));
+            if ((int) crc.getValue() != segment.getInt(offset + 4)) {
+                return null;
+            }
+            long storedAt = segment.getLong(offset + 8);
+            ByteBuffer payload = segment.slice(offset + RECORD_HEADER + keyBytes.length, length - keyBytes.length);
+            return new Entry(decodeBooks(payload), storedAt);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(QueryKey key, List<Book> books) {
+        byte[] keyBytes = encodeKey(key);
+        byte[] payload = encodePayload(keyBytes, books);
+        int size = RECORD_HEADER + payload.length;
+        if (HEADER_SIZE + size > capacity) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (end + size > capacity) {
+                compact(size);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            int offset = end;
+            segment.putInt(offset, payload.length);
+            segment.putInt(offset + 4, (int) crc.getValue());
+            segment.putLong(offset + 8, System.currentTimeMillis());
+            segment.put(offset + RECORD_HEADER, payload);
+            end += size;
+            // Publish the record only once it is completely written
+            segment.putInt(END_OFFSET, end);
+            index(hash(keyBytes), offset);
+        } catch (IOException e) {
+            // A cache that cannot be written is just a smaller cache
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            segment.force();
+            channel.close();
+        } finally {
+            try {
+                processLock.release();
+                lockChannel.close();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public record Entry(List<Book> books, long storedAtMillis) {
+    }
+
+    private void map() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        hashes = new long[64];
+        offsets = new int[64];
+        entries = 0;
+        if (segment.getLong(0) != MAGIC || segment.getInt(VERSION_OFFSET) != VERSION) {
+            segment.putLong(0, MAGIC);
+            segment.putInt(VERSION_OFFSET, VERSION);
+            end = HEADER_SIZE;
+            segment.putInt(END_OFFSET, end);
+            return;
+        }
+        end = recover(Math.min(segment.getInt(END_OFFSET), capacity));
+        segment.putInt(END_OFFSET, end);
+    }
+
+    // Index every intact record up to the recorded end; a torn record ends the segment early
+    private int recover(int recordedEnd) {
+        int offset = HEADER_SIZE;
+        while (offset + RECORD_HEADER <= recordedEnd) {
+            int length = segment.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER + length > recordedEnd) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            segment.get(offset + RECORD_HEADER, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.getInt(offset + 4)) {
+                break;
+            }
+            ByteBuffer keyBytes = ByteBuffer.wrap(payload, 0, keyLength(payload));
+            index(hash(keyBytes), offset);
+            offset += RECORD_HEADER + length;
+        }
+        return offset;
+    }
+
+    // Rewrite the latest record of every key into a new segment and swap it in. Java cannot unmap
+    // a buffer: the old mapping stays in the address space, and the old file on disk, until the
+    // buffer is garbage collected. So the records are copied with plain writes rather than through
+    // a second mapping, and the old buffer is dropped before the new file is mapped; at worst one
+    // stale mapping of capacity bytes is left waiting for the collector after each compaction.
+    private void compact(int needed) throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        int live = HEADER_SIZE;
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] != 0) {
+                live += RECORD_HEADER + segment.getInt(offsets[i]);
+            }
+        }
+        boolean keep = live + needed <= capacity * 3L / 4;
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            int position = HEADER_SIZE;
+            if (keep) {
+                for (int i = 0; i < offsets.length; i++) {
+                    if (offsets[i] != 0) {
+                        ByteBuffer record = segment.slice(offsets[i], RECORD_HEADER + segment.getInt(offsets[i]));
+                        while (record.hasRemaining()) {
+                            position += out.write(record, position);
+                        }
+                    }
+                }
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putLong(0, MAGIC)
+                    .putInt(END_OFFSET, position)
+                    .putInt(VERSION_OFFSET, VERSION);
+            while (header.hasRemaining()) {
+                out.write(header, header.position());
+            }
+            out.force(true);
+        }
+        segment = null;
+        channel.close();
+        try {
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Maps the compacted file, or the old one again if it could not be swapped in
+            map();
+        }
+    }
+
+    private int find(long hash, byte[] keyBytes) {
+        int mask = hashes.length - 1;
+        for (int slot = (int) hash & mask; offsets[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && keyMatches(offsets[slot], keyBytes)) {
+                return offsets[slot];
+            }
+        }
+        return -1;
+    }
+
+    private boolean keyMatches(int offset, byte[] keyBytes) {
+        int start = offset + RECORD_HEADER;
+        if (segment.getInt(offset) < keyBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (segment.get(start + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Point the key's slot at the record at offset, replacing an older record for the same key
+    private void index(long hash, int offset) {
+        if (entries * 2 >= hashes.length) {
+            grow();
+        }
+        int mask = hashes.length - 1;
+        int keyLength = segment.getInt(offset + RECORD_HEADER) + KEY_OVERHEAD;
+        int slot = (int) hash & mask;
+        for (; offsets[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && sameKey(offsets[slot], offset, keyLength)) {
+                offsets[slot] = offset;
+                return;
+            }
+        }
+        hashes[slot] = hash;
+        offsets[slot] = offset;
+        entries++;
+    }
+
+    private boolean sameKey(int a, int b, int keyLength) {
+        return segment.slice(a + RECORD_HEADER, keyLength).equals(segment.slice(b + RECORD_HEADER, keyLength));
+    }
+
+    private void grow() {
+        long[] oldHashes = hashes;
+        int[] oldOffsets = offsets;
+        hashes = new long[oldHashes.length * 2];
+        offsets = new int[oldOffsets.length * 2];
+        int mask = hashes.length - 1;
+        for (int i = 0; i < oldOffsets.length; i++) {
+            if (oldOffsets[i] != 0) {
+                int slot = (int) oldHashes[i] & mask;
+                while (offsets[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                offsets[slot] = oldOffsets[i];
+            }
+        }
+    }
+
+    // Key bytes: int query length, query UTF-8, type, startIndex, count
+    private static byte[] encodeKey(QueryKey key) {
+        byte[] query = key.query().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(query.length + KEY_OVERHEAD)
+                .putInt(query.length).put(query)
+                .put((byte) key.type().ordinal())
+                .putInt(key.startIndex())
+                .putInt(key.count())
+                .array();
+    }
+
+    private static int keyLength(byte[] payload) {
+        return ByteBuffer.wrap(payload).getInt(0) + KEY_OVERHEAD;
+    }
+
+    private static byte[] encodePayload(byte[] keyBytes, List<Book> books) {
+        List<byte[]> strings = new ArrayList<>();
+        int size = keyBytes.length + 4;
+        for (Book book : books) {
+            size += 20;
+            for (String s : List.of(book.title(), book.subtitle(), book.publisher(), book.description())) {
+                size += addString(strings, s);
+            }
+            size += 8;
+            for (String author : book.authors()) {
+                size += addString(strings, author);
+            }
+            for (String category : book.categories()) {
+                size += addString(strings, category);
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(size).put(keyBytes).putInt(books.size());
+        int next = 0;
+        for (Book book : books) {
+            out.putInt(book.id()).putLong(book.isbn13()).putFloat(book.averageRating()).putInt(book.ratingsCount());
+            for (int i = 0; i < 4; i++) {
+                putString(out, strings.get(next++));
+            }
+            out.putInt(book.authors().size()).putInt(book.categories().size());
+            for (int i = 0; i < book.authors().size() + book.categories().size(); i++) {
+                putString(out, strings.get(next++));
+            }
+        }
+        return out.array();
+    }
+
+    private static int addString(List<byte[]> strings, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        strings.add(bytes);
+        return 4 + bytes.length;
+    }
+
+    private static void putString(ByteBuffer out, byte[] bytes) {
+        out.putInt(bytes.length).put(bytes);
+    }
+
+    private static List<Book> decodeBooks(ByteBuffer in) {
+        int count = in.getInt();
+        List<Book> books = new ArrayList<>(count);
+        for (int b = 0; b < count; b++) {
+            int id = in.getInt();
+            long isbn13 = in.getLong();
+            float averageRating = in.getFloat();
+            int ratingsCount = in.getInt();
+            String title = getString(in);
+            String subtitle = getString(in);
+            String publisher = getString(in);
+            String description = getString(in);
+            int authorCount = in.getInt();
+            int categoryCount = in.getInt();
+            List<String> authors = new ArrayList<>(authorCount);
+            for (int i = 0; i < authorCount; i++) {
+                authors.add(getString(in));
+            }
+            List<String> categories = new ArrayList<>(categoryCount);
+            for (int i = 0; i < categoryCount; i++) {
+                categories.add(getString(in));
+            }
+            books.add(new Book(id, title, subtitle, authors, categories, publisher, description, isbn13,
+                    averageRating, ratingsCount));
+        }
+        return books;
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // 64-bit FNV-1a
+    private static long hash(byte[] bytes) {
+        return hash(ByteBuffer.wrap(bytes));
+    }
+
+    private static long hash(ByteBuffer bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            h = (h ^ (bytes.get(i) & 0xff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// One compressed bitmap of book ids per genre, so genre filters are set operations.
+// Queries combine genres with AND, OR and NOT, evaluated left to right:
+// "fantasy AND young adult NOT romance" means (fantasy AND young-adult) AND NOT romance.
+// "AND NOT" is accepted as a synonym for NOT.
+// Queries without operators, such as "fantasy young adult romance", are ranked instead: books
+// matching more (and rarer) of the listed genres come first, found with WAND over the bitmaps.
+public final class GenreIndex {
+    // Longest genre name, in words, tried when splitting a ranked query into genres
+    private static final int MAX_GENRE_WORDS = 4;
+
+    private final Map<String, RoaringBitmap> genres;
+    private final RoaringBitmap all;
+
+    private GenreIndex(Map<String, RoaringBitmap> genres, RoaringBitmap all) {
+        this.genres = genres;
+        this.all = all;
+    }
+
+    // Store the index in a segment's index section: the genre names, each genre's bitmap in the
+    // same order, then the bitmap of every book
+    void write(IndexFile.Writer out) throws IOException {
+        out.strings(StringTable.of(genres.keySet().toArray(new String[0])));
+        for (RoaringBitmap bitmap : genres.values()) {
+            bitmap.write(out);
+        }
+        all.write(out);
+    }
+
+    // The index write() stored
+    static GenreIndex read(IndexFile.Reader in) throws IOException {
+        StringTable names = in.strings();
+        Map<String, RoaringBitmap> genres = new TreeMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            genres.put(names.get(i), RoaringBitmap.read(in));
+        }
+        return new GenreIndex(genres, RoaringBitmap.read(in));
+    }
+
+    // Genre names as stored in the index, e.g. "young-adult"
+    public List<String> genres() {
+        return new ArrayList<>(genres.keySet());
+    }
+
+    // Canonical key for a genre name: "Young Adult" and "young-adult" both become "young-adult"
+    public static String key(String genre) {
+        return String.join("-", Tokenizer.tokenize(genre));
+    }
+
+    // Whether the query uses AND / OR / NOT and so must be evaluated as a boolean filter
+    public static boolean isBoolean(String query) {
+        for (String word : query.trim().split("\\s+")) {
+            String upper = word.toUpperCase(Locale.ROOT);
+            if (upper.equals("AND") || upper.equals("OR") || upper.equals("NOT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Top-k books by how many of the query's genres they carry, each genre weighted by rarity.
+    // Words are grouped into known genre names greedily, longest first; unknown words are ignored.
+    public List<TopK.Hit> rank(String query, int k) {
+        return rank(query, k, stats(query));
+    }
+
+    // As rank, with genres known and weighted by stats, which must cover this index. With the
+    // statistics of every shard, each shard groups the words and weighs the genres the same way.
+    public List<TopK.Hit> rank(String query, int k, Bm25.Stats stats) {
+        List<String> words = Tokenizer.tokenize(query);
+        List<GenreScorer> scorers = new ArrayList<>();
+        int i = 0;
+        while (i < words.size()) {
+            int matched = 0;
+            for (int length = Math.min(MAX_GENRE_WORDS, words.size() - i); length > 0; length--) {
+                String key = String.join("-", words.subList(i, i + length));
+                int[] docFreq = stats.docFreqs().get(key);
+                if (docFreq != null) {
+                    RoaringBitmap bitmap = genres.get(key);
+                    if (bitmap != null) {
+                        scorers.add(new GenreScorer(bitmap, Bm25.idf(docFreq[0], stats.docCounts()[0])));
+                    }
+                    matched = length;
+                    break;
+                }
+            }
+            i += Math.max(1, matched);
+        }
+        return Wand.search(scorers, k);
+    }
+
+    // Book counts of every genre named by a run of the query's words, and the number of books
+    public Bm25.Stats stats(String query) {
+        List<String> words = Tokenizer.tokenize(query);
+        Map<String, int[]> docFreqs = new HashMap<>();
+        for (int i = 0; i < words.size(); i++) {
+            for (int length = 1; length <= MAX_GENRE_WORDS && i + length <= words.size(); length++) {
+                String key = String.join("-", words.subList(i, i + length));
+                RoaringBitmap bitmap = genres.get(key);
+                if (bitmap != null) {
+                    docFreqs.put(key, new int[]{bitmap.cardinality()});
+                }
+            }
+        }
+        return new Bm25.Stats(docFreqs, new int[]{all.cardinality()}, new long[1], new int[1]);
+    }
+
+    // Evaluate a boolean genre query; throws IllegalArgumentException if it is malformed
+    public RoaringBitmap search(String query) {
+        RoaringBitmap result = null;
+        String operator = null;
+        List<String> words = new ArrayList<>();
+
+        for (String word : query.trim().split("\\s+")) {
+            String upper = word.toUpperCase(Locale.ROOT);
+            if (upper.equals("AND") || upper.equals("OR") || upper.equals("NOT")) {
+                if (!words.isEmpty()) {
+                    result = apply(result, operator, lookup(words));
+                    words.clear();
+                } else if ("AND".equals(operator) && upper.equals("NOT")) {
+                    // "AND NOT" reads naturally and means the same as NOT
+                } else if (result != null || upper.equals("AND") || upper.equals("OR")) {
+                    // Two operators in a row, or a query starting with AND/OR
+                    throw new IllegalArgumentException("Expected a genre before " + upper);
+                }
+                operator = upper;
+            } else if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+
+        if (words.isEmpty()) {
+            throw new IllegalArgumentException(operator == null ? "Enter at least one genre" : "Expected a genre after " + operator);
+        }
+        return apply(result, operator, lookup(words));
+    }
+
+    private RoaringBitmap lookup(List<String> words) {
+        return genres.getOrDefault(key(String.join(" ", words)), RoaringBitmap.EMPTY);
+    }
+
+    private RoaringBitmap apply(RoaringBitmap left, String operator, RoaringBitmap right) {
+        if (left == null) {
+            // A leading NOT selects everything except the genre
+            return "NOT".equals(operator) ? all.andNot(right) : right;
+        }
+        switch (operator) {
+            case "OR":
+                return left.or(right);
+            case "NOT":
+                return left.andNot(right);
+            default:
+                return left.and(right);
+        }
+    }
+
+    // A genre clause for WAND: every book in the bitmap scores the genre's weight
+    private static final class GenreScorer implements Wand.Scorer {
+        private final RoaringBitmap.Cursor cursor;
+        private final float weight;
+        private float blockMax;
+
+        GenreScorer(RoaringBitmap bitmap, float weight) {
+            this.cursor = bitmap.cursor();
+            this.weight = weight;
+        }
+
+        @Override
+        public int doc() {
+            return cursor.doc();
+        }
+
+        @Override
+        public void next() {
+            cursor.next();
+        }
+
+        @Override
+        public void advance(int target) {
+            cursor.advance(target);
+        }
+
+        @Override
+        public float maxScore() {
+            return weight;
+        }
+
+        // Blocks are the bitmap's 65536-id chunks; gaps between chunks have no books and score zero
+        @Override
+        public int shallowAdvance(int target) {
+            blockMax = cursor.chunkPresent(target) ? weight : 0;
+            return cursor.chunkEnd(target);
+        }
+
+        @Override
+        public float blockMaxScore() {
+            return blockMax;
+        }
+
+        @Override
+        public float score() {
+            return weight;
+        }
+    }
+
+    // Collects genres per book; books must be added in ascending id order
+    public static final class Builder {
+        private final Map<String, RoaringBitmap.Builder> genres = new HashMap<>();
+        private int size;
+
+        public Builder add(int bookId, List<String> categories) {
+            for (String category : categories) {
+                String key = key(category);
+                if (!key.isEmpty()) {
+                    genres.computeIfAbsent(key, k -> new RoaringBitmap.Builder()).add(bookId);
+                }
+            }
+            size = Math.max(size, bookId + 1);
+            return this;
+        }
+
+        public GenreIndex build() {
+            Map<String, RoaringBitmap> built = new TreeMap<>();
+            genres.forEach((genre, bitmap) -> built.put(genre, bitmap.build()));
+            return new GenreIndex(built, RoaringBitmap.range(size));
+        }
+    }
+}
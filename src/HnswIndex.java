@@ -0,0 +1,577 @@
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Approximate nearest neighbours by cosine similarity over unit-length vectors, as a hierarchical
+// navigable small world graph (Malkov and Yashunin). Every node is linked to a few close nodes
+// on level 0 and, with geometrically falling probability, on sparser levels above; a search
+// walks greedily down from the single entry node on the top level and finishes with a beam of
+// width ef on level 0, visiting a few thousand nodes instead of all of them.
+//
+// The graph is grown by a Builder and then frozen into flat buffers: the vectors end to end, and
+// per node a fixed-size slot per level holding the neighbour count and then the neighbours. A
+// frozen graph never changes, so searches take no locks, and it is stored in a segment file and
+// searched straight from the mapping rather than built again when the segment is opened.
+public final class HnswIndex {
+    // Links per node on the upper levels, and twice that on level 0
+    private static final int LINKS = 16;
+    private static final int EF_CONSTRUCTION = 100;
+    private static final int DEFAULT_EF = 64;
+    private static final int MAX_LEVEL = 16;
+    private static final double LEVEL_FACTOR = 1 / Math.log(LINKS);
+
+    private final FlatGraph graph;
+    private final int entry;
+    private final int topLevel;
+    private final ScratchPool scratch;
+
+    private HnswIndex(FlatGraph graph, int entry, int topLevel) {
+        this.graph = graph;
+        this.entry = entry;
+        this.topLevel = topLevel;
+        this.scratch = new ScratchPool(graph.capacity());
+    }
+
+    public int capacity() {
+        return graph.capacity();
+    }
+
+    // The k nodes most similar to the query, best first, scored by cosine similarity
+    public List<TopK.Hit> search(float[] query, int k) {
+        return search(query, k, Math.max(k, DEFAULT_EF));
+    }
+
+    // A wider beam (ef) trades speed for recall
+    public List<TopK.Hit> search(float[] query, int k, int ef) {
+        if (query.length != graph.dimensions) {
+            throw new IllegalArgumentException("Expected a vector of " + graph.dimensions + " dimensions");
+        }
+        int current = entry;
+        if (current < 0 || k <= 0) {
+            return List.of();
+        }
+        Scratch s = scratch.take();
+        try {
+            float distance = graph.distance(query, 0, current);
+            for (int l = topLevel; l > 0; l--) {
+                current = graph.greedy(query, 0, current, distance, l, s);
+                distance = graph.distance(query, 0, current);
+            }
+            graph.searchLevel(query, 0, current, distance, Math.max(k, ef), 0, s);
+            TopK best = new TopK(k);
+            while (s.results.size > 0) {
+                best.offer(s.results.node(), 1 + s.results.key());
+                s.results.pop();
+            }
+            return best.results();
+        } finally {
+            scratch.give(s);
+        }
+    }
+
+    // Store the graph in a segment's index section
+    void write(IndexFile.Writer out) throws IOException {
+        out.putInt(graph.dimensions);
+        out.putInt(entry);
+        out.putInt(topLevel);
+        out.floats(graph.vectors);
+        out.ints(graph.nodeStart);
+        out.ints(graph.links);
+    }
+
+    // The graph write() stored, searched in place in the mapped section
+    static HnswIndex read(IndexFile.Reader in) throws IOException {
+        int dimensions = in.getInt();
+        int entry = in.getInt();
+        int topLevel = in.getInt();
+        FloatBuffer vectors = in.floats();
+        IntBuffer nodeStart = in.ints();
+        IntBuffer links = in.ints();
+        int capacity = nodeStart.limit() - 1;
+        if (dimensions <= 0 || capacity < 0 || (long) dimensions * capacity != vectors.limit()
+                || nodeStart.get(capacity) != links.limit() || entry >= capacity || topLevel > MAX_LEVEL) {
+            throw new IOException("Segment indexes are truncated or corrupt");
+        }
+        return new HnswIndex(new FlatGraph(dimensions, vectors, nodeStart, links), entry, topLevel);
+    }
+
+    // Where a node's slot for a level starts, from the start of its first slot
+    private static int levelStart(int level) {
+        return level == 0 ? 0 : 1 + maxLinks(0) + (level - 1) * (1 + maxLinks(1));
+    }
+
+    private static int maxLinks(int level) {
+        return level == 0 ? 2 * LINKS : LINKS;
+    }
+
+    private static int randomLevel() {
+        double uniform = 1 - ThreadLocalRandom.current().nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(uniform) * LEVEL_FACTOR));
+    }
+
+    // Grows a graph, then freezes it with build(). Nodes may be inserted from many threads at
+    // once: each node's links are guarded by a lock on its own link arrays, never more than one
+    // of which is held at a time, and the entry node by one more lock. Which of two equally close
+    // neighbours a link goes to depends on the order of concurrent inserts, so a graph built in
+    // parallel can differ slightly from run to run.
+    public static final class Builder {
+        private final LinkedGraph graph;
+        private final Object entryLock = new Object();
+        private int entry = -1;
+        private int topLevel = -1;
+        private final ScratchPool scratch;
+
+        public Builder(int dimensions, int capacity) {
+            this.graph = new LinkedGraph(dimensions, capacity);
+            this.scratch = new ScratchPool(capacity);
+        }
+
+        // Add node, an id below capacity not inserted before, with a unit-length vector
+        public Builder insert(int node, float[] vector) {
+            if (vector.length != graph.dimensions) {
+                throw new IllegalArgumentException("Expected a vector of " + graph.dimensions + " dimensions");
+            }
+            float[] vectors = graph.vectors;
+            int offset = node * graph.dimensions;
+            System.arraycopy(vector, 0, vectors, offset, graph.dimensions);
+            int level = randomLevel();
+            int[][] own = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                own[l] = new int[1 + maxLinks(l)];
+            }
+            // Other threads only find the node through a link written under a lock taken after this
+            graph.links[node] = own;
+
+            int current;
+            int top;
+            synchronized (entryLock) {
+                if (entry < 0) {
+                    entry = node;
+                    topLevel = level;
+                    return this;
+                }
+                current = entry;
+                top = topLevel;
+            }
+
+            Scratch s = scratch.take();
+            try {
+                float distance = graph.distance(vectors, offset, current);
+                for (int l = top; l > level; l--) {
+                    current = graph.greedy(vectors, offset, current, distance, l, s);
+                    distance = graph.distance(vectors, offset, current);
+                }
+                for (int l = Math.min(level, top); l >= 0; l--) {
+                    graph.searchLevel(vectors, offset, current, distance, EF_CONSTRUCTION, l, s);
+                    int found = s.results.size;
+                    int[] nodes = new int[found];
+                    float[] distances = new float[found];
+                    // The results heap gives up its farthest node first
+                    for (int i = found - 1; i >= 0; i--) {
+                        nodes[i] = s.results.node();
+                        distances[i] = -s.results.key();
+                        s.results.pop();
+                    }
+                    int chosen = graph.selectNeighbours(nodes, distances, found, LINKS);
+                    synchronized (own) {
+                        own[l][0] = chosen;
+                        System.arraycopy(nodes, 0, own[l], 1, chosen);
+                    }
+                    for (int i = 0; i < chosen; i++) {
+                        graph.link(nodes[i], node, l);
+                    }
+                    current = nodes[0];
+                    distance = distances[0];
+                }
+            } finally {
+                scratch.give(s);
+            }
+
+            if (level > top) {
+                synchronized (entryLock) {
+                    if (level > topLevel) {
+                        entry = node;
+                        topLevel = level;
+                    }
+                }
+            }
+            return this;
+        }
+
+        // The graph in its flat form; call once every insert has returned
+        public HnswIndex build() {
+            int[][][] links = graph.links;
+            int[] nodeStart = new int[links.length + 1];
+            for (int node = 0; node < links.length; node++) {
+                int levels = links[node] == null ? 0 : links[node].length;
+                nodeStart[node + 1] = Math.addExact(nodeStart[node], levels == 0 ? 0 : levelStart(levels));
+            }
+            int[] flat = new int[nodeStart[links.length]];
+            for (int node = 0; node < links.length; node++) {
+                for (int l = 0; links[node] != null && l < links[node].length; l++) {
+                    int[] list = links[node][l];
+                    System.arraycopy(list, 0, flat, nodeStart[node] + levelStart(l), list.length);
+                }
+            }
+            FlatGraph flatGraph = new FlatGraph(graph.dimensions, FloatBuffer.wrap(graph.vectors),
+                    IntBuffer.wrap(nodeStart), IntBuffer.wrap(flat));
+            return new HnswIndex(flatGraph, entry, topLevel);
+        }
+    }
+
+    // Neighbour lists and vectors, however they are held, and the two searches that walk them
+    private abstract static class Graph {
+        final int dimensions;
+
+        Graph(int dimensions) {
+            this.dimensions = dimensions;
+        }
+
+        // Copy a node's neighbours on a level into into, returning how many there are
+        abstract int neighbours(int node, int level, int[] into);
+
+        // Cosine distance, 1 - similarity, between a query vector at offset and a node
+        abstract float distance(float[] query, int offset, int node);
+
+        // Follow ever closer neighbours on one level until none is closer
+        final int greedy(float[] query, int offset, int current, float distance, int level, Scratch s) {
+            boolean moved = true;
+            while (moved) {
+                moved = false;
+                int count = neighbours(current, level, s.neighbours);
+                for (int i = 0; i < count; i++) {
+                    int candidate = s.neighbours[i];
+                    float d = distance(query, offset, candidate);
+                    if (d < distance) {
+                        distance = d;
+                        current = candidate;
+                        moved = true;
+                    }
+                }
+            }
+            return current;
+        }
+
+        // Beam search on one level; leaves the ef closest nodes found in s.results, farthest on top
+        final void searchLevel(float[] query, int offset, int start, float distance, int ef, int level, Scratch s) {
+            s.visit();
+            s.mark(start);
+            s.candidates.clear();
+            s.results.clear();
+            s.candidates.push(start, distance);
+            s.results.push(start, -distance);
+            while (s.candidates.size > 0) {
+                float nearest = s.candidates.key();
+                if (s.results.size >= ef && nearest > -s.results.key()) {
+                    break;
+                }
+                int count = neighbours(s.candidates.node(), level, s.neighbours);
+                s.candidates.pop();
+                for (int i = 0; i < count; i++) {
+                    int candidate = s.neighbours[i];
+                    if (!s.mark(candidate)) {
+                        continue;
+                    }
+                    float d = distance(query, offset, candidate);
+                    if (s.results.size < ef || d < -s.results.key()) {
+                        s.candidates.push(candidate, d);
+                        s.results.push(candidate, -d);
+                        if (s.results.size > ef) {
+                            s.results.pop();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // The frozen graph: node n's vector at vectors[n * dimensions], and its slot for level l at
+    // links[nodeStart[n] + levelStart(l)], the neighbour count followed by room for maxLinks(l)
+    private static final class FlatGraph extends Graph {
+        final FloatBuffer vectors;
+        final IntBuffer nodeStart;
+        final IntBuffer links;
+
+        FlatGraph(int dimensions, FloatBuffer vectors, IntBuffer nodeStart, IntBuffer links) {
+            super(dimensions);
+            this.vectors = vectors;
+            this.nodeStart = nodeStart;
+            this.links = links;
+        }
+
+        int capacity() {
+            return nodeStart.limit() - 1;
+        }
+
+        @Override
+        int neighbours(int node, int level, int[] into) {
+            int slot = nodeStart.get(node) + levelStart(level);
+            int count = links.get(slot);
+            links.get(slot + 1, into, 0, count);
+            return count;
+        }
+
+        // Four running sums let the multiplies overlap instead of each waiting on the previous add
+        @Override
+        float distance(float[] query, int offset, int node) {
+            int other = node * dimensions;
+            float dot0 = 0;
+            float dot1 = 0;
+            float dot2 = 0;
+            float dot3 = 0;
+            int i = 0;
+            for (; i + 3 < dimensions; i += 4) {
+                dot0 += query[offset + i] * vectors.get(other + i);
+                dot1 += query[offset + i + 1] * vectors.get(other + i + 1);
+                dot2 += query[offset + i + 2] * vectors.get(other + i + 2);
+                dot3 += query[offset + i + 3] * vectors.get(other + i + 3);
+            }
+            for (; i < dimensions; i++) {
+                dot0 += query[offset + i] * vectors.get(other + i);
+            }
+            return 1 - (dot0 + dot1 + dot2 + dot3);
+        }
+    }
+
+    // The graph while it grows: per node and level the neighbour count, then the neighbours, in
+    // an array locked by the node's array of levels. Null until the node is inserted.
+    private static final class LinkedGraph extends Graph {
+        final float[] vectors;
+        final int[][][] links;
+
+        LinkedGraph(int dimensions, int capacity) {
+            super(dimensions);
+            this.vectors = new float[Math.multiplyExact(dimensions, capacity)];
+            this.links = new int[capacity][][];
+        }
+
+        @Override
+        int neighbours(int node, int level, int[] into) {
+            int[][] nodeLinks = links[node];
+            synchronized (nodeLinks) {
+                int[] list = nodeLinks[level];
+                int count = list[0];
+                System.arraycopy(list, 1, into, 0, count);
+                return count;
+            }
+        }
+
+        // Add a link from node to neighbour, pruning node's links again if that overfills them
+        void link(int node, int neighbour, int level) {
+            int[][] nodeLinks = links[node];
+            synchronized (nodeLinks) {
+                int[] list = nodeLinks[level];
+                int count = list[0];
+                if (count < list.length - 1) {
+                    list[1 + count] = neighbour;
+                    list[0] = count + 1;
+                    return;
+                }
+                int[] nodes = new int[count + 1];
+                float[] distances = new float[count + 1];
+                int offset = node * dimensions;
+                for (int i = 0; i <= count; i++) {
+                    nodes[i] = i < count ? list[1 + i] : neighbour;
+                    distances[i] = distance(vectors, offset, nodes[i]);
+                }
+                sortByDistance(nodes, distances, count + 1);
+                int chosen = selectNeighbours(nodes, distances, count + 1, list.length - 1);
+                list[0] = chosen;
+                System.arraycopy(nodes, 0, list, 1, chosen);
+            }
+        }
+
+        // The heuristic of the HNSW paper: going outward from the closest, keep a candidate only if
+        // it is closer to the node than to every neighbour already kept, so links spread in different
+        // directions instead of clustering. Slots left over go to the closest of the rejected, which
+        // keeps clusters of identical vectors (books with the same genres and authors and no
+        // description) connected. The kept nodes are moved to the front, nearest first; returns how many.
+        int selectNeighbours(int[] nodes, float[] distances, int count, int max) {
+            if (count <= max) {
+                return count;
+            }
+            int kept = 0;
+            int rejected = 0;
+            int[] rejectedNodes = new int[count];
+            float[] rejectedDistances = new float[count];
+            for (int i = 0; i < count && kept < max; i++) {
+                int candidate = nodes[i];
+                int offset = candidate * dimensions;
+                boolean diverse = true;
+                for (int j = 0; j < kept; j++) {
+                    if (distance(vectors, offset, nodes[j]) < distances[i]) {
+                        diverse = false;
+                        break;
+                    }
+                }
+                if (diverse) {
+                    nodes[kept] = candidate;
+                    distances[kept] = distances[i];
+                    kept++;
+                } else {
+                    rejectedNodes[rejected] = candidate;
+                    rejectedDistances[rejected] = distances[i];
+                    rejected++;
+                }
+            }
+            for (int i = 0; i < rejected && kept < max; i++) {
+                nodes[kept] = rejectedNodes[i];
+                distances[kept] = rejectedDistances[i];
+                kept++;
+            }
+            sortByDistance(nodes, distances, kept);
+            return kept;
+        }
+
+        private static void sortByDistance(int[] nodes, float[] distances, int count) {
+            for (int i = 1; i < count; i++) {
+                int node = nodes[i];
+                float distance = distances[i];
+                int j = i - 1;
+                for (; j >= 0 && distances[j] > distance; j--) {
+                    nodes[j + 1] = nodes[j];
+                    distances[j + 1] = distances[j];
+                }
+                nodes[j + 1] = node;
+                distances[j + 1] = distance;
+            }
+        }
+
+        // As FlatGraph.distance, over the array
+        @Override
+        float distance(float[] query, int offset, int node) {
+            int other = node * dimensions;
+            float dot0 = 0;
+            float dot1 = 0;
+            float dot2 = 0;
+            float dot3 = 0;
+            int i = 0;
+            for (; i + 3 < dimensions; i += 4) {
+                dot0 += query[offset + i] * vectors[other + i];
+                dot1 += query[offset + i + 1] * vectors[other + i + 1];
+                dot2 += query[offset + i + 2] * vectors[other + i + 2];
+                dot3 += query[offset + i + 3] * vectors[other + i + 3];
+            }
+            for (; i < dimensions; i++) {
+                dot0 += query[offset + i] * vectors[other + i];
+            }
+            return 1 - (dot0 + dot1 + dot2 + dot3);
+        }
+    }
+
+    // Search state for the searches in flight. A search takes one and gives it back when done, so
+    // there are only as many visit marks arrays, each as long as the graph, as searches have ever
+    // run at once, however many threads have searched this graph.
+    private static final class ScratchPool {
+        private final int capacity;
+        private final ConcurrentLinkedQueue<Scratch> free = new ConcurrentLinkedQueue<>();
+
+        ScratchPool(int capacity) {
+            this.capacity = capacity;
+        }
+
+        Scratch take() {
+            Scratch s = free.poll();
+            return s != null ? s : new Scratch(capacity);
+        }
+
+        void give(Scratch s) {
+            free.offer(s);
+        }
+    }
+
+    // Search state, reused so a search allocates almost nothing
+    private static final class Scratch {
+        // A node was visited in this search if its mark equals the current generation
+        final int[] marks;
+        int generation;
+        final int[] neighbours = new int[2 * LINKS];
+        final Heap candidates = new Heap();
+        final Heap results = new Heap();
+
+        Scratch(int capacity) {
+            marks = new int[capacity];
+        }
+
+        void visit() {
+            if (++generation == 0) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        // Whether the node was new to this search
+        boolean mark(int node) {
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+
+    // Binary min-heap of nodes by key; the results use negated distances to keep the farthest on top
+    private static final class Heap {
+        int[] nodes = new int[64];
+        float[] keys = new float[64];
+        int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        int node() {
+            return nodes[0];
+        }
+
+        float key() {
+            return keys[0];
+        }
+
+        void push(int node, float key) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            keys[i] = key;
+        }
+
+        void pop() {
+            int node = nodes[--size];
+            float key = keys[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            nodes[i] = node;
+            keys[i] = key;
+        }
+    }
+}
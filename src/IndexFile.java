@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+// The index section of a segment file: the segment's search indexes, stored after its columns
+// so that opening the segment maps them instead of building them again. The section is a run of
+// blocks, each a long byte length followed by that many bytes of primitives in native byte order,
+// padded to 8 bytes. A reader hands every block out as a buffer view of the mapping, so reading
+// an index copies and parses nothing. Blocks carry no names; an index reads its blocks back in
+// the order it wrote them. The whole section is mapped as one buffer, so it is limited to 2 GB.
+final class IndexFile {
+    private IndexFile() {
+    }
+
+    // Whatever a segment stores in the section, written in one pass
+    interface Source {
+        void write(Writer out) throws IOException;
+    }
+
+    // Appends blocks to a channel from its current position, which must be 8-byte aligned
+    static final class Writer {
+        private static final int CHUNK = 1 << 16;
+
+        private final FileChannel channel;
+        private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK).order(ByteOrder.nativeOrder());
+        private long written;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ints(IntBuffer.wrap(new int[]{value}));
+        }
+
+        void putLong(long value) throws IOException {
+            longs(LongBuffer.wrap(new long[]{value}));
+        }
+
+        void bytes(ByteBuffer values) throws IOException {
+            start(values.limit());
+            for (int i = 0; i < values.limit(); i++) {
+                room(1);
+                chunk.put(values.get(i));
+            }
+            pad();
+        }
+
+        void chars(CharBuffer values) throws IOException {
+            start(2L * values.limit());
+            for (int i = 0; i < values.limit(); i++) {
+                room(2);
+                chunk.putChar(values.get(i));
+            }
+            pad();
+        }
+
+        void ints(IntBuffer values) throws IOException {
+            start(4L * values.limit());
+            for (int i = 0; i < values.limit(); i++) {
+                room(4);
+                chunk.putInt(values.get(i));
+            }
+            pad();
+        }
+
+        void longs(LongBuffer values) throws IOException {
+            start(8L * values.limit());
+            for (int i = 0; i < values.limit(); i++) {
+                room(8);
+                chunk.putLong(values.get(i));
+            }
+            pad();
+        }
+
+        void floats(FloatBuffer values) throws IOException {
+            start(4L * values.limit());
+            for (int i = 0; i < values.limit(); i++) {
+                room(4);
+                chunk.putFloat(values.get(i));
+            }
+            pad();
+        }
+
+        void strings(StringTable values) throws IOException {
+            ints(values.starts());
+            bytes(values.utf8());
+        }
+
+        // Write out what is still buffered; returns the length of the section
+        long finish() throws IOException {
+            drain();
+            return written;
+        }
+
+        private void start(long length) throws IOException {
+            if (written + 8 + length > Integer.MAX_VALUE) {
+                throw new IOException("Segment indexes are over 2 GB");
+            }
+            room(8);
+            chunk.putLong(length);
+        }
+
+        private void pad() throws IOException {
+            while (((written + chunk.position()) & 7) != 0) {
+                room(1);
+                chunk.put((byte) 0);
+            }
+        }
+
+        private void room(int bytes) throws IOException {
+            if (chunk.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            chunk.flip();
+            written += chunk.remaining();
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
+            chunk.clear();
+        }
+    }
+
+    // Reads blocks in order from a section mapped in native byte order
+    static final class Reader {
+        private final ByteBuffer section;
+        private int position;
+
+        Reader(ByteBuffer section) {
+            this.section = section;
+        }
+
+        int getInt() throws IOException {
+            IntBuffer value = ints();
+            if (value.limit() != 1) {
+                throw corrupt();
+            }
+            return value.get(0);
+        }
+
+        long getLong() throws IOException {
+            LongBuffer value = longs();
+            if (value.limit() != 1) {
+                throw corrupt();
+            }
+            return value.get(0);
+        }
+
+        ByteBuffer bytes() throws IOException {
+            return block(1);
+        }
+
+        CharBuffer chars() throws IOException {
+            return block(2).asCharBuffer();
+        }
+
+        IntBuffer ints() throws IOException {
+            return block(4).asIntBuffer();
+        }
+
+        LongBuffer longs() throws IOException {
+            return block(8).asLongBuffer();
+        }
+
+        FloatBuffer floats() throws IOException {
+            return block(4).asFloatBuffer();
+        }
+
+        StringTable strings() throws IOException {
+            IntBuffer starts = ints();
+            ByteBuffer utf8 = bytes();
+            if (starts.limit() == 0 || starts.get(starts.limit() - 1) != utf8.limit()) {
+                throw corrupt();
+            }
+            return new StringTable(starts, utf8);
+        }
+
+        private ByteBuffer block(int width) throws IOException {
+            if (section.limit() - position < 8) {
+                throw corrupt();
+            }
+            long length = section.getLong(position);
+            if (length < 0 || length % width != 0 || length > section.limit() - position - 8) {
+                throw corrupt();
+            }
+            ByteBuffer block = section.slice(position + 8, (int) length).order(ByteOrder.nativeOrder());
+            position = (int) Math.min(section.limit(), (position + 8 + length + 7) & ~7L);
+            return block;
+        }
+
+        private static IOException corrupt() {
+            return new IOException("Segment indexes are truncated or corrupt");
+        }
+    }
+}
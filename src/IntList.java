@@ -0,0 +1,53 @@
+import java.util.Arrays;
+
+// Growable list of primitive ints, used to build posting lists without boxing
+public final class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(8);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(1, capacity)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return values[index];
+    }
+
+    public void set(int index, int value) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        values[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Last value added, or -1 when the list is empty
+    public int last() {
+        return size == 0 ? -1 : values[size - 1];
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,302 @@
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Maps normalized tokens to sorted posting lists of book ids with in-document term counts.
+// All postings live in flat int arrays; term i owns docs[offsets[i] .. offsets[i + 1]) and the
+// matching freqs. Per-document token counts are kept for BM25 length normalization.
+// Each posting list is also cut into blocks of BLOCK_SIZE postings that record their last doc
+// id, their largest term count and their shortest document. BM25's tf component grows with the
+// count and shrinks with the length, so those two bound every score in the block for whatever
+// average length the caller scores with, and dynamic pruning can skip blocks that cannot score.
+// The arrays are buffers, on the heap for a freshly built index and views of the segment file
+// for one read back with read(), which is then ready without a pass over its postings.
+public final class InvertedIndex {
+    static final int BLOCK_SIZE = 128;
+
+    private final StringTable terms;
+    private final IntBuffer offsets;
+    private final IntBuffer docs;
+    private final IntBuffer freqs;
+    private final IntBuffer docLengths;
+    // Tokens over all documents, and the number of documents with at least one
+    private final long totalLength;
+    private final int presentCount;
+
+    // Term i owns blocks blockStart[i] .. blockStart[i + 1] - 1
+    private final IntBuffer blockStart;
+    private final IntBuffer blockLastDoc;
+    private final IntBuffer blockMaxFreq;
+    private final IntBuffer blockMinLength;
+
+    private InvertedIndex(StringTable terms, IntBuffer offsets, IntBuffer docs, IntBuffer freqs, IntBuffer docLengths,
+                          long totalLength, int presentCount, IntBuffer blockStart, IntBuffer blockLastDoc,
+                          IntBuffer blockMaxFreq, IntBuffer blockMinLength) {
+        this.terms = terms;
+        this.offsets = offsets;
+        this.docs = docs;
+        this.freqs = freqs;
+        this.docLengths = docLengths;
+        this.totalLength = totalLength;
+        this.presentCount = presentCount;
+        this.blockStart = blockStart;
+        this.blockLastDoc = blockLastDoc;
+        this.blockMaxFreq = blockMaxFreq;
+        this.blockMinLength = blockMinLength;
+    }
+
+    // Index over postings in the flat layout, with its block bounds worked out
+    private static InvertedIndex of(StringTable terms, int[] offsets, int[] docs, int[] freqs, int[] docLengths) {
+        long total = 0;
+        int present = 0;
+        for (int length : docLengths) {
+            total += length;
+            present += length > 0 ? 1 : 0;
+        }
+
+        int termCount = terms.size();
+        int[] blockStart = new int[termCount + 1];
+        for (int t = 0; t < termCount; t++) {
+            int postings = offsets[t + 1] - offsets[t];
+            blockStart[t + 1] = blockStart[t] + (postings + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        }
+        int[] blockLastDoc = new int[blockStart[termCount]];
+        int[] blockMaxFreq = new int[blockLastDoc.length];
+        int[] blockMinLength = new int[blockLastDoc.length];
+        for (int t = 0; t < termCount; t++) {
+            for (int b = blockStart[t]; b < blockStart[t + 1]; b++) {
+                int from = offsets[t] + (b - blockStart[t]) * BLOCK_SIZE;
+                int to = Math.min(from + BLOCK_SIZE, offsets[t + 1]);
+                int maxFreq = 0;
+                int minLength = Integer.MAX_VALUE;
+                for (int i = from; i < to; i++) {
+                    maxFreq = Math.max(maxFreq, freqs[i]);
+                    minLength = Math.min(minLength, docLengths[docs[i]]);
+                }
+                blockLastDoc[b] = docs[to - 1];
+                blockMaxFreq[b] = maxFreq;
+                blockMinLength[b] = minLength;
+            }
+        }
+        return new InvertedIndex(terms, IntBuffer.wrap(offsets), IntBuffer.wrap(docs), IntBuffer.wrap(freqs),
+                IntBuffer.wrap(docLengths), total, present, IntBuffer.wrap(blockStart), IntBuffer.wrap(blockLastDoc),
+                IntBuffer.wrap(blockMaxFreq), IntBuffer.wrap(blockMinLength));
+    }
+
+    // Store the index, block bounds included, in a segment's index section
+    void write(IndexFile.Writer out) throws IOException {
+        out.strings(terms);
+        out.ints(offsets);
+        out.ints(docs);
+        out.ints(freqs);
+        out.ints(docLengths);
+        out.putLong(totalLength);
+        out.putInt(presentCount);
+        out.ints(blockStart);
+        out.ints(blockLastDoc);
+        out.ints(blockMaxFreq);
+        out.ints(blockMinLength);
+    }
+
+    // The index write() stored, over the mapped section
+    static InvertedIndex read(IndexFile.Reader in) throws IOException {
+        StringTable terms = in.strings();
+        IntBuffer offsets = in.ints();
+        IntBuffer docs = in.ints();
+        IntBuffer freqs = in.ints();
+        IntBuffer docLengths = in.ints();
+        long totalLength = in.getLong();
+        int presentCount = in.getInt();
+        IntBuffer blockStart = in.ints();
+        IntBuffer blockLastDoc = in.ints();
+        IntBuffer blockMaxFreq = in.ints();
+        IntBuffer blockMinLength = in.ints();
+        int termCount = terms.size();
+        if (offsets.limit() != termCount + 1 || freqs.limit() != docs.limit() || blockStart.limit() != termCount + 1
+                || blockMaxFreq.limit() != blockLastDoc.limit() || blockMinLength.limit() != blockLastDoc.limit()) {
+            throw new IOException("Segment indexes are truncated or corrupt");
+        }
+        return new InvertedIndex(terms, offsets, docs, freqs, docLengths, totalLength, presentCount, blockStart,
+                blockLastDoc, blockMaxFreq, blockMinLength);
+    }
+
+    public int termCount() {
+        return terms.size();
+    }
+
+    // Number of documents the index was built over, including ones with no tokens
+    public int docCount() {
+        return docLengths.limit();
+    }
+
+    public int docLength(int doc) {
+        return doc < docLengths.limit() ? docLengths.get(doc) : 0;
+    }
+
+    // Tokens over all documents
+    public long totalLength() {
+        return totalLength;
+    }
+
+    // Documents with at least one token; sparse fields like subtitles average over these only, so
+    // the documents that leave them empty do not drag the average toward zero
+    public int presentCount() {
+        return presentCount;
+    }
+
+    // Cursor over the postings of a term, or null if no document contains it
+    public Cursor cursor(String term) {
+        int ord = terms.find(term);
+        return ord < 0 ? null : new Cursor(ord);
+    }
+
+    // Forward-only iterator over one posting list; doc() is NO_MORE_DOCS once exhausted
+    public final class Cursor {
+        public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+        private final int ord;
+        private final int start;
+        private final int end;
+        private int pos;
+        private int block;
+
+        private Cursor(int ord) {
+            this.ord = ord;
+            this.start = offsets.get(ord);
+            this.end = offsets.get(ord + 1);
+            this.pos = start;
+            this.block = blockStart.get(ord);
+        }
+
+        public int docFreq() {
+            return end - start;
+        }
+
+        public int doc() {
+            return pos < end ? docs.get(pos) : NO_MORE_DOCS;
+        }
+
+        public int freq() {
+            return freqs.get(pos);
+        }
+
+        public InvertedIndex index() {
+            return InvertedIndex.this;
+        }
+
+        // Bound on the BM25 tf component anywhere in this posting list, scored with averageLength;
+        // the largest of the block bounds, so it takes a pass over the term's blocks
+        public float maxTf(float averageLength) {
+            float best = 0;
+            for (int b = blockStart.get(ord); b < blockStart.get(ord + 1); b++) {
+                best = Math.max(best, Bm25.tf(blockMaxFreq.get(b), blockMinLength.get(b), averageLength));
+            }
+            return best;
+        }
+
+        // Move the block pointer (not the cursor) to the block that may hold target; returns that
+        // block's last doc id, or NO_MORE_DOCS when target lies past the end of the list
+        public int shallowAdvance(int target) {
+            int lastBlock = blockStart.get(ord + 1);
+            while (block < lastBlock && blockLastDoc.get(block) < target) {
+                block++;
+            }
+            return block < lastBlock ? blockLastDoc.get(block) : NO_MORE_DOCS;
+        }
+
+        // Bound on the BM25 tf component in the block selected by shallowAdvance
+        public float blockMaxTf(float averageLength) {
+            return block < blockStart.get(ord + 1)
+                    ? Bm25.tf(blockMaxFreq.get(block), blockMinLength.get(block), averageLength) : 0;
+        }
+
+        public void next() {
+            pos++;
+        }
+
+        // Galloping search to the first posting with a doc id >= target
+        public void advance(int target) {
+            int step = 1;
+            int low = pos;
+            int high = pos;
+            while (high < end && docs.get(high) < target) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            high = Math.min(high, end);
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (docs.get(mid) < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            pos = low;
+        }
+    }
+
+    // Collects documents in ascending id order, then freezes them into the flat layout
+    public static final class Builder {
+        private final Map<String, IntList[]> lists = new HashMap<>();
+        private final IntList docLengths = new IntList();
+
+        public Builder add(int docId, String text) {
+            List<String> tokens = Tokenizer.tokenize(text);
+            while (docLengths.size() <= docId) {
+                docLengths.add(0);
+            }
+            docLengths.set(docId, docLengths.get(docId) + tokens.size());
+
+            for (String token : tokens) {
+                IntList[] list = lists.computeIfAbsent(token, t -> new IntList[]{new IntList(4), new IntList(4)});
+                if (list[0].last() == docId) {
+                    list[1].set(list[1].size() - 1, list[1].last() + 1);
+                } else {
+                    list[0].add(docId);
+                    list[1].add(1);
+                }
+            }
+            return this;
+        }
+
+        public InvertedIndex build() {
+            // Terms go in UTF-8 byte order, which the term table is searched in
+            String[] keys = lists.keySet().toArray(new String[0]);
+            byte[][] encoded = new byte[keys.length][];
+            Integer[] order = new Integer[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                encoded[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+                order[i] = i;
+            }
+            Arrays.sort(order, (x, y) -> Arrays.compareUnsigned(encoded[x], encoded[y]));
+            String[] terms = new String[keys.length];
+            byte[][] sorted = new byte[keys.length][];
+            for (int i = 0; i < keys.length; i++) {
+                terms[i] = keys[order[i]];
+                sorted[i] = encoded[order[i]];
+            }
+
+            int[] offsets = new int[terms.length + 1];
+            for (int i = 0; i < terms.length; i++) {
+                offsets[i + 1] = offsets[i] + lists.get(terms[i])[0].size();
+            }
+
+            int[] docs = new int[offsets[terms.length]];
+            int[] freqs = new int[docs.length];
+            for (int i = 0; i < terms.length; i++) {
+                IntList[] list = lists.get(terms[i]);
+                for (int j = 0; j < list[0].size(); j++) {
+                    docs[offsets[i] + j] = list[0].get(j);
+                    freqs[offsets[i] + j] = list[1].get(j);
+                }
+            }
+            return of(StringTable.of(sorted), offsets, docs, freqs, docLengths.toArray());
+        }
+    }
+}
@@ -0,0 +1,392 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Pull parser that walks a JSON document token by token without building a tree.
+// Callers ask for exactly the values they want and skip the rest; skipped values, field names
+// matched with nextName(String[]) and numbers are consumed without allocating. Separators are
+// handled leniently: commas and colons are treated as whitespace between tokens.
+public final class JsonReader implements AutoCloseable {
+    public enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END }
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int pos;
+    private int limit;
+
+    // true for each open object, false for each open array
+    private final Deque<Boolean> scopes = new ArrayDeque<>();
+    private boolean expectingName;
+
+    // Reused for field names and strings
+    private char[] scratch = new char[64];
+    private int scratchLength;
+
+    public JsonReader(Reader in) {
+        this.in = in;
+    }
+
+    public Token peek() throws IOException {
+        int c = peekChar();
+        switch (c) {
+            case -1:
+                return Token.END;
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '}':
+                return Token.END_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case ']':
+                return Token.END_ARRAY;
+            case '"':
+                return expectingName ? Token.NAME : Token.STRING;
+            case 't':
+            case 'f':
+                return Token.BOOLEAN;
+            case 'n':
+                return Token.NULL;
+            default:
+                return Token.NUMBER;
+        }
+    }
+
+    public void beginObject() throws IOException {
+        expect('{');
+        scopes.push(Boolean.TRUE);
+        expectingName = true;
+    }
+
+    public void endObject() throws IOException {
+        expect('}');
+        scopes.pop();
+        valueDone();
+    }
+
+    public void beginArray() throws IOException {
+        expect('[');
+        scopes.push(Boolean.FALSE);
+        expectingName = false;
+    }
+
+    public void endArray() throws IOException {
+        expect(']');
+        scopes.pop();
+        valueDone();
+    }
+
+    // Whether the current object or array has another element
+    public boolean hasNext() throws IOException {
+        int c = peekChar();
+        return c != '}' && c != ']' && c != -1;
+    }
+
+    public String nextName() throws IOException {
+        readName();
+        return new String(scratch, 0, scratchLength);
+    }
+
+    // Read a field name and return its index in candidates, or -1; allocates nothing
+    public int nextName(String[] candidates) throws IOException {
+        readName();
+        for (int i = 0; i < candidates.length; i++) {
+            String candidate = candidates[i];
+            if (candidate.length() == scratchLength && matchesScratch(candidate)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String nextString() throws IOException {
+        if (peek() == Token.NUMBER) {
+            readNumberChars();
+        } else {
+            expect('"');
+            readStringChars();
+        }
+        valueDone();
+        return new String(scratch, 0, scratchLength);
+    }
+
+    public double nextDouble() throws IOException {
+        boolean quoted = peekChar() == '"';
+        if (quoted) {
+            pos++;
+            readStringChars();
+        } else {
+            readNumberChars();
+        }
+        valueDone();
+        return parseScratchNumber();
+    }
+
+    public int nextInt() throws IOException {
+        return (int) nextDouble();
+    }
+
+    public boolean nextBoolean() throws IOException {
+        boolean value = peekChar() == 't';
+        skipLiteral(value ? "true" : "false");
+        valueDone();
+        return value;
+    }
+
+    public void nextNull() throws IOException {
+        skipLiteral("null");
+        valueDone();
+    }
+
+    // Skip the next value, including any nested objects and arrays
+    public void skipValue() throws IOException {
+        if (peek() == Token.NAME) {
+            readName();
+        }
+        int depth = 0;
+        do {
+            int c = peekChar();
+            switch (c) {
+                case -1:
+                    throw syntaxError("Unexpected end of input");
+                case '{':
+                case '[':
+                    pos++;
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    pos++;
+                    depth--;
+                    break;
+                case '"':
+                    pos++;
+                    skipString();
+                    break;
+                default:
+                    // Numbers and literals: consume up to the next structural character
+                    while (true) {
+                        int d = readChar();
+                        if (d == -1 || d == ',' || d == '}' || d == ']' || d == ':' || Character.isWhitespace(d)) {
+                            if (d != -1) {
+                                pos--;
+                            }
+                            break;
+                        }
+                    }
+            }
+        } while (depth > 0);
+        valueDone();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // After a complete value inside an object, the next token is a field name again
+    private void valueDone() {
+        expectingName = !scopes.isEmpty() && scopes.peek();
+    }
+
+    private void readName() throws IOException {
+        if (!expectingName) {
+            throw syntaxError("Expected a value, not a field name");
+        }
+        expect('"');
+        readStringChars();
+        expectingName = false;
+    }
+
+    private boolean matchesScratch(String candidate) {
+        for (int i = 0; i < scratchLength; i++) {
+            if (scratch[i] != candidate.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Read string contents up to the closing quote into scratch, decoding escapes
+    private void readStringChars() throws IOException {
+        scratchLength = 0;
+        while (true) {
+            int c = readChar();
+            if (c == -1) {
+                throw syntaxError("Unterminated string");
+            }
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                c = readEscape();
+            }
+            appendScratch((char) c);
+        }
+    }
+
+    private int readEscape() throws IOException {
+        int c = readChar();
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(readChar(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return value;
+            case -1:
+                throw syntaxError("Unterminated string");
+            default:
+                return c;
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = readChar();
+            if (c == -1) {
+                throw syntaxError("Unterminated string");
+            }
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                readChar();
+            }
+        }
+    }
+
+    private void readNumberChars() throws IOException {
+        scratchLength = 0;
+        while (true) {
+            int c = readChar();
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                appendScratch((char) c);
+            } else {
+                if (c != -1) {
+                    pos--;
+                }
+                if (scratchLength == 0) {
+                    throw syntaxError("Expected a number");
+                }
+                return;
+            }
+        }
+    }
+
+    // Decimal parse of scratch without creating a String; plenty for ratings and counts
+    private double parseScratchNumber() throws IOException {
+        int i = 0;
+        boolean negative = false;
+        if (i < scratchLength && (scratch[i] == '-' || scratch[i] == '+')) {
+            negative = scratch[i++] == '-';
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        boolean digits = false;
+        for (; i < scratchLength && scratch[i] >= '0' && scratch[i] <= '9'; i++) {
+            mantissa = mantissa * 10 + (scratch[i] - '0');
+            digits = true;
+        }
+        if (i < scratchLength && scratch[i] == '.') {
+            for (i++; i < scratchLength && scratch[i] >= '0' && scratch[i] <= '9'; i++) {
+                if (mantissa < Long.MAX_VALUE / 10) {
+                    mantissa = mantissa * 10 + (scratch[i] - '0');
+                    exponent--;
+                }
+                digits = true;
+            }
+        }
+        if (i < scratchLength && (scratch[i] == 'e' || scratch[i] == 'E')) {
+            i++;
+            boolean negativeExponent = i < scratchLength && scratch[i] == '-';
+            if (i < scratchLength && (scratch[i] == '-' || scratch[i] == '+')) {
+                i++;
+            }
+            int value = 0;
+            for (; i < scratchLength && scratch[i] >= '0' && scratch[i] <= '9'; i++) {
+                value = value * 10 + (scratch[i] - '0');
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (!digits || i != scratchLength) {
+            throw syntaxError("Invalid number");
+        }
+        double value = exponent == 0 ? mantissa : mantissa * Math.pow(10, exponent);
+        return negative ? -value : value;
+    }
+
+    private void skipLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (readChar() != literal.charAt(i)) {
+                throw syntaxError("Expected " + literal);
+            }
+        }
+    }
+
+    private void appendScratch(char c) {
+        if (scratchLength == scratch.length) {
+            char[] grown = new char[scratch.length * 2];
+            System.arraycopy(scratch, 0, grown, 0, scratchLength);
+            scratch = grown;
+        }
+        scratch[scratchLength++] = c;
+    }
+
+    private void expect(char c) throws IOException {
+        if (peekChar() != c) {
+            throw syntaxError("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    // Next significant character without consuming it; whitespace, commas and colons are skipped
+    private int peekChar() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            char c = buffer[pos];
+            if (c == ',' || c == ':' || Character.isWhitespace(c)) {
+                pos++;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private int readChar() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        pos = 0;
+        limit = read;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON: " + message);
+    }
+}
@@ -0,0 +1,139 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Accepts strings within maxEdits insertions, deletions or substitutions of a fixed pattern, as a
+// deterministic automaton that is built lazily while it runs. A state stands for one row of the
+// edit-distance table, with costs capped at maxEdits + 1. A row only depends on which pattern
+// positions the next character equals, so every character outside the pattern is one symbol,
+// and the reachable rows are bounded by the pattern and maxEdits, not by the input. Each state
+// and each transition is computed once and then kept in a table: once the automaton has seen a
+// few candidates, checking another costs one table lookup per character, whatever its length.
+// Not thread-safe; build one per query.
+public final class LevenshteinAutomaton {
+    // Transitions not computed yet
+    private static final int UNKNOWN = -1;
+
+    private final String pattern;
+    private final int maxEdits;
+    // Distinct pattern characters, sorted; symbol i is symbols[i], and symbols.length is any other
+    private final char[] symbols;
+    private final int width;
+    private final Map<String, Integer> states = new HashMap<>();
+    private int[][] rows = new int[16][];
+    // Per state: the distance if the input ended here (maxEdits + 1 for none), and whether any
+    // continuation can still match
+    private int[] ends = new int[16];
+    private boolean[] live = new boolean[16];
+    private int stateCount;
+    // transitions[state * width + symbol], or UNKNOWN
+    private int[] transitions;
+
+    public LevenshteinAutomaton(String pattern, int maxEdits) {
+        this.pattern = pattern;
+        this.maxEdits = maxEdits;
+        char[] chars = pattern.toCharArray();
+        Arrays.sort(chars);
+        int distinct = 0;
+        for (int i = 0; i < chars.length; i++) {
+            if (i == 0 || chars[i] != chars[i - 1]) {
+                chars[distinct++] = chars[i];
+            }
+        }
+        this.symbols = Arrays.copyOf(chars, distinct);
+        this.width = distinct + 1;
+        this.transitions = new int[16 * width];
+        Arrays.fill(transitions, UNKNOWN);
+
+        // Before any input, matching i pattern characters against nothing costs i deletions
+        int[] start = new int[pattern.length() + 1];
+        for (int i = 0; i < start.length; i++) {
+            start[i] = Math.min(i, maxEdits + 1);
+        }
+        state(start);
+    }
+
+    public int maxEdits() {
+        return maxEdits;
+    }
+
+    // State before any input
+    public int start() {
+        return 0;
+    }
+
+    // The state after reading c in state
+    public int step(int state, char c) {
+        int symbol = Arrays.binarySearch(symbols, c);
+        int slot = state * width + (symbol >= 0 ? symbol : symbols.length);
+        int next = transitions[slot];
+        if (next == UNKNOWN) {
+            next = state(advance(rows[state], symbol >= 0 ? symbols[symbol] : -1));
+            transitions[slot] = next;
+        }
+        return next;
+    }
+
+    public boolean isMatch(int state) {
+        return ends[state] <= maxEdits;
+    }
+
+    // False once no continuation of the input can end within maxEdits
+    public boolean canMatch(int state) {
+        return live[state];
+    }
+
+    // Edit distance between the pattern and text, or -1 if it exceeds maxEdits
+    public int distance(String text) {
+        if (Math.abs(text.length() - pattern.length()) > maxEdits) {
+            return -1;
+        }
+        int state = start();
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            if (!canMatch(state)) {
+                return -1;
+            }
+        }
+        return isMatch(state) ? ends[state] : -1;
+    }
+
+    // The next row of the table for an input character, or for c = -1 one matching no position
+    private int[] advance(int[] row, int c) {
+        int limit = maxEdits + 1;
+        int[] next = new int[row.length];
+        next[0] = Math.min(row[0] + 1, limit);
+        for (int i = 1; i < row.length; i++) {
+            int cost = pattern.charAt(i - 1) == c ? 0 : 1;
+            int best = Math.min(row[i - 1] + cost, Math.min(row[i] + 1, next[i - 1] + 1));
+            next[i] = Math.min(best, limit);
+        }
+        return next;
+    }
+
+    // The number of the state for a row, adding it the first time the row is reached
+    private int state(int[] row) {
+        char[] key = new char[row.length];
+        for (int i = 0; i < row.length; i++) {
+            key[i] = (char) row[i];
+        }
+        Integer known = states.putIfAbsent(new String(key), stateCount);
+        if (known != null) {
+            return known;
+        }
+        if (stateCount == rows.length) {
+            rows = Arrays.copyOf(rows, stateCount * 2);
+            ends = Arrays.copyOf(ends, stateCount * 2);
+            live = Arrays.copyOf(live, stateCount * 2);
+            int filled = transitions.length;
+            transitions = Arrays.copyOf(transitions, filled * 2);
+            Arrays.fill(transitions, filled, transitions.length, UNKNOWN);
+        }
+        rows[stateCount] = row;
+        ends[stateCount] = row[pattern.length()];
+        for (int cost : row) {
+            live[stateCount] |= cost <= maxEdits;
+        }
+        return stateCount++;
+    }
+}
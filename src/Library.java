@@ -0,0 +1,650 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+// The local book catalog together with the indexes used to search it, kept as a list of
+// immutable segments in the style of an LSM tree. New books go into a new small segment; a
+// background merge combines runs of MERGE_FACTOR adjacent segments of similar size into one, so
+// the segment count stays logarithmic in the catalog size and nothing is ever rebuilt from
+// scratch. Searches read one published snapshot of the segment list and never wait for an
+// add or a merge. Merges keep rows in order, so a book's id (its position in the catalog) is
+// stable while the catalog grows.
+//
+// The segments are the shards of parallel search, and the only ones: every query fans out over
+// the segments on a search pool of one thread per core and the per-segment top-k results are
+// merged, but each segment is searched on a single thread. A catalog of one segment, which is
+// any catalog of up to INGEST_ROWS books, is therefore searched on one thread. Ranked searches
+// first sum the segments' statistics, so every segment scores with the idf and the average field
+// lengths of the whole catalog and the merged top-k matches what a single index would return.
+// So that a large catalog does spread over the cores, merges do not grow a segment beyond
+// 1/CORES of it, nor beyond MIN_SEGMENT_CAP rows on a smaller one.
+//
+// A library opened on a directory persists each segment as a mapped file (see ColumnStore) and
+// lists the live ones in a manifest that is replaced atomically; the indexes of a segment are
+// built from its mapped columns when it is opened. Other libraries live only in memory.
+// One process at a time owns a directory, by holding a lock on its lock file until close(). A
+// library opened while another process owns the directory is read-only: it searches the
+// segments listed when it was opened, never merges, deletes or writes anything, and refuses adds.
+public final class Library implements AutoCloseable {
+    // Books per segment when ingesting a catalog file
+    private static final int INGEST_ROWS = 50_000;
+    private static final int MERGE_FACTOR = 4;
+    private static final String MANIFEST = "segments";
+    private static final String LOCK = "lock";
+    // A read-only open rereads the manifest if the owner merged away a file it lists meanwhile
+    private static final int MANIFEST_ATTEMPTS = 5;
+    private static final long CLOSE_WAIT_MINUTES = 10;
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    // Below this, splitting a catalog further costs more in per-segment overhead than it gains
+    private static final int MIN_SEGMENT_CAP = 16_384;
+    // Extra similar books fetched to make up for the book itself and other editions of it
+    private static final int SIMILAR_SLACK = 5;
+    // Completions asked of each segment at most; past this the merged ranking is best effort
+    private static final int MAX_COMPLETION_DEPTH = 1024;
+    private static final ForkJoinPool SEARCHERS = new ForkJoinPool(CORES, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("booksage-search-" + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
+    // Directory holding the segment files, or null for a library held in memory
+    private final Path directory;
+    // Open on the directory's lock file for as long as the library is; null in memory
+    private final FileChannel lockChannel;
+    // Held while this library owns the directory; null in memory and when read-only
+    private final FileLock lock;
+    private final ExecutorService merger = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "booksage-merge");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong nextGeneration = new AtomicLong();
+    // Guards replacing the snapshot; readers never take it
+    private final Object writeLock = new Object();
+    private volatile Snapshot snapshot = new Snapshot(new Segment[0], 0);
+
+    public Library(List<Book> books) {
+        this(ColumnStore.of(books));
+    }
+
+    public Library(ColumnStore catalog) {
+        this.directory = null;
+        this.lockChannel = null;
+        this.lock = null;
+        if (catalog.rows() > 0) {
+            snapshot = new Snapshot(new Segment[]{Segment.build(catalog, null)}, 0);
+        }
+    }
+
+    private Library(Path directory, FileChannel lockChannel, FileLock lock) {
+        this.directory = directory;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+    }
+
+    // Read a tab-separated catalog file into a library held in memory; see data/books.tsv for
+    // the column layout
+    public static Library load(Path path) throws IOException {
+        Library library = new Library(List.of());
+        library.addCatalog(path);
+        return library;
+    }
+
+    // Open the segments stored in directory, creating it if needed. Segment files that are not
+    // in the manifest were left by an interrupted write or merge and are removed. If another
+    // process owns the directory, the library is opened read-only instead.
+    public static Library open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        try {
+            Library library = new Library(directory, lockChannel, tryLock(lockChannel));
+            library.snapshot = new Snapshot(library.readManifest(), 0);
+            if (!library.isReadOnly()) {
+                library.removeUnlisted();
+                library.merger.execute(library::mergeSegments);
+            }
+            return library;
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    // The lock, or null if another process (or another library in this one) holds it
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    // True when another process owned the directory as this library was opened
+    public boolean isReadOnly() {
+        return directory != null && lock == null;
+    }
+
+    // The segments the manifest lists, mapped. Only the owner deletes segment files, so a missing
+    // one can only mean the manifest was replaced after it was read, and is read again.
+    private Segment[] readManifest() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        for (int attempt = 1; ; attempt++) {
+            List<Segment> segments = new ArrayList<>();
+            try {
+                if (Files.exists(manifest)) {
+                    for (String name : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                        if (name.isBlank()) {
+                            continue;
+                        }
+                        Path file = directory.resolve(name);
+                        segments.add(Segment.open(file));
+                        nextGeneration.accumulateAndGet(generation(name) + 1, Math::max);
+                    }
+                }
+                return segments.toArray(new Segment[0]);
+            } catch (NoSuchFileException e) {
+                if (!isReadOnly() || attempt == MANIFEST_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void removeUnlisted() throws IOException {
+        Set<String> live = new HashSet<>();
+        for (Segment segment : snapshot.segments) {
+            live.add(segment.file().getFileName().toString());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*")) {
+            for (Path file : files) {
+                if (!live.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    // Add every book in a tab-separated catalog file, a segment of INGEST_ROWS books at a time
+    public int addCatalog(Path path) throws IOException {
+        Ingest ingest = ingest();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                CatalogRow row = CatalogRow.parse(line);
+                if (row != null) {
+                    ingest.add(row);
+                }
+            }
+        }
+        return ingest.finish();
+    }
+
+    // Add books as a new segment; they get the next free ids, whatever ids they carry
+    public void add(List<Book> books) throws IOException {
+        if (!books.isEmpty()) {
+            append(ColumnStore.of(books));
+        }
+    }
+
+    // Start adding a stream of rows, which become searchable a segment of INGEST_ROWS at a time
+    public Ingest ingest() {
+        return new Ingest();
+    }
+
+    // Collects rows into the next segment, and adds it once it is full. Used from one thread; a
+    // failure leaves the segments added so far in place.
+    public final class Ingest {
+        private ColumnStore.Builder rows = new ColumnStore.Builder();
+        private int added;
+
+        private Ingest() {
+        }
+
+        public void add(CatalogRow row) throws IOException {
+            rows.add(row.toBook(rows.rows()));
+            if (rows.rows() == INGEST_ROWS) {
+                append(rows.build());
+                added += INGEST_ROWS;
+                rows = new ColumnStore.Builder();
+            }
+        }
+
+        // Add the rows still collected; returns how many rows this ingest added in all
+        public int finish() throws IOException {
+            if (rows.rows() > 0) {
+                append(rows.build());
+                added += rows.rows();
+                rows = new ColumnStore.Builder();
+            }
+            return added;
+        }
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    // Changes whenever books are added, so results computed against an older catalog can be told apart
+    public long version() {
+        return snapshot.version;
+    }
+
+    public int segmentCount() {
+        return snapshot.segments.length;
+    }
+
+    public Book get(int id) {
+        Snapshot current = snapshot;
+        int s = current.segmentOf(id);
+        return current.segments[s].catalog().book(id - current.starts[s], id);
+    }
+
+    // Best BM25 matches for the query across title, subtitle and description
+    public List<Book> searchTitle(String query, int limit) {
+        Snapshot current = snapshot;
+        Bm25.Stats stats = fanOut(current, s -> current.segments[s].titleStats(query), Bm25.Stats::plus, null);
+        TopK best = fanOut(current, s -> current.offset(s, current.segments[s].searchTitle(query, limit, stats), limit),
+                Library::mergeTop, new TopK(0));
+        return current.toBooks(best.results());
+    }
+
+    // Books matching a boolean genre query such as "fantasy AND young adult NOT romance", or for
+    // a plain list of genres, the books that match the most of them
+    public List<Book> searchGenre(String query, int limit) {
+        Snapshot current = snapshot;
+        if (!GenreIndex.isBoolean(query)) {
+            Bm25.Stats stats = fanOut(current, s -> current.segments[s].genreStats(query), Bm25.Stats::plus, null);
+            TopK best = fanOut(current, s -> current.offset(s, current.segments[s].rankGenre(query, limit, stats), limit),
+                    Library::mergeTop, new TopK(0));
+            return current.toBooks(best.results());
+        }
+        return fanOut(current, s -> current.books(s, current.segments[s].filterGenre(query, limit)),
+                (left, right) -> concat(left, right, limit), new ArrayList<>());
+    }
+
+    // Books by the authors closest to the query, tolerating small typos and accent differences.
+    // Authors are told apart by AuthorIndex.key, so spellings that differ only in case, accents or
+    // spacing are one author, in one segment and across segments; each matched author's books
+    // come from the author index postings of every segment that has the author.
+    public List<Book> searchAuthor(String query, int limit) {
+        Snapshot current = snapshot;
+        // Per author key across segments: best distance and total books
+        Map<String, int[]> authors = fanOut(current, s -> {
+            Map<String, int[]> found = new HashMap<>();
+            for (AuthorIndex.Match match : current.segments[s].matchAuthor(query, limit)) {
+                found.put(current.segments[s].authorKey(match.author()), new int[]{match.distance(), match.books()});
+            }
+            return found;
+        }, (left, right) -> {
+            right.forEach((name, match) -> left.merge(name, match,
+                    (a, b) -> new int[]{Math.min(a[0], b[0]), a[1] + b[1]}));
+            return left;
+        }, new HashMap<>());
+        List<Map.Entry<String, int[]>> ranked = new ArrayList<>(authors.entrySet());
+        ranked.sort((a, b) -> a.getValue()[0] != b.getValue()[0]
+                ? Integer.compare(a.getValue()[0], b.getValue()[0]) : Integer.compare(b.getValue()[1], a.getValue()[1]));
+
+        List<Book> results = new ArrayList<>();
+        for (int a = 0; a < ranked.size() && a < limit && results.size() < limit; a++) {
+            String key = ranked.get(a).getKey();
+            int wanted = limit - results.size();
+            results.addAll(fanOut(current, s -> {
+                int author = current.segments[s].findAuthor(key);
+                if (author < 0) {
+                    // Not List.of(): concat appends to the left-hand list
+                    return new ArrayList<Book>();
+                }
+                return current.books(s, current.segments[s].authorBooks(author, wanted));
+            }, (left, right) -> concat(left, right, wanted), List.of()));
+        }
+        return results;
+    }
+
+    // Books most like the given one by description, genres and authors, which need not be in the
+    // catalog; books with the same title, such as the book itself, are left out. Each segment is
+    // searched approximately, so now and then a close match is missed.
+    public List<Book> similar(Book book, int limit) {
+        Snapshot current = snapshot;
+        float[] vector = BookEmbedding.of(book);
+        int wanted = limit + SIMILAR_SLACK;
+        TopK best = fanOut(current, s -> current.offset(s, current.segments[s].similar(vector, wanted), wanted),
+                Library::mergeTop, new TopK(0));
+        String title = Tokenizer.normalize(book.title());
+        List<Book> similar = new ArrayList<>(limit);
+        for (Book candidate : current.toBooks(best.results())) {
+            if (similar.size() < limit && !Tokenizer.normalize(candidate.title()).equals(title)) {
+                similar.add(candidate);
+            }
+        }
+        return similar;
+    }
+
+    // Top-k titles starting with the prefix, most common first
+    public List<String> completeTitle(String prefix, int k) {
+        return complete(snapshot.segments, Segment::titleCompletions, prefix, k);
+    }
+
+    // Top-k author names starting with the prefix, most prolific first
+    public List<String> completeAuthor(String prefix, int k) {
+        return complete(snapshot.segments, Segment::authorCompletions, prefix, k);
+    }
+
+    public List<String> genres() {
+        Set<String> genres = new TreeSet<>();
+        for (Segment segment : snapshot.segments) {
+            genres.addAll(segment.genres());
+        }
+        return new ArrayList<>(genres);
+    }
+
+    // Stop merging once the merge in progress, if any, has finished, then give up the directory
+    @Override
+    public void close() {
+        merger.shutdown();
+        try {
+            merger.awaitTermination(CLOSE_WAIT_MINUTES, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (lockChannel != null) {
+            try {
+                // Closing the channel releases the lock with it
+                lockChannel.close();
+            } catch (IOException e) {
+                // Nothing more to do; the lock goes when the process exits
+            }
+        }
+    }
+
+    // Run search on every segment of the snapshot, in parallel on the search pool when there is
+    // more than one, and combine the results pairwise in segment order
+    private static <T> T fanOut(Snapshot current, IntFunction<T> search, BinaryOperator<T> combine, T none) {
+        int segments = current.segments.length;
+        if (segments <= 1) {
+            return segments == 0 ? none : search.apply(0);
+        }
+        return SEARCHERS.invoke(new FanOut<>(search, combine, 0, segments));
+    }
+
+    private static TopK mergeTop(TopK left, TopK right) {
+        for (TopK.Hit hit : right.results()) {
+            left.offer(hit.doc(), hit.score());
+        }
+        return left;
+    }
+
+    private static List<Book> concat(List<Book> left, List<Book> right, int limit) {
+        for (int i = 0; i < right.size() && left.size() < limit; i++) {
+            left.add(right.get(i));
+        }
+        return left;
+    }
+
+    // The k completions with the highest weight summed over all segments, as a single trie
+    // would rank them. A segment only ranks its own keys, so each is asked for its top depth, and
+    // every key that turns up is then weighed exactly in every segment. A key that turned up
+    // nowhere weighs at most the sum of the last weights of the lists that came back full; once
+    // the k-th exact total reaches that, no such key can displace it. Until then depth doubles.
+    private static List<String> complete(Segment[] segments, Function<Segment, CompletionTrie> trie,
+                                         String prefix, int k) {
+        if (k <= 0) {
+            return List.of();
+        }
+        for (int depth = k; ; depth *= 2) {
+            // Per normalized key, the first display string seen
+            Map<String, String> found = new LinkedHashMap<>();
+            int unseen = 0;
+            for (Segment segment : segments) {
+                List<CompletionTrie.Completion> list = trie.apply(segment).completions(prefix, depth);
+                if (list.size() == depth) {
+                    unseen += list.get(depth - 1).weight();
+                }
+                for (CompletionTrie.Completion completion : list) {
+                    found.putIfAbsent(Tokenizer.normalize(completion.text()).trim(), completion.text());
+                }
+            }
+            List<CompletionTrie.Completion> ranked = new ArrayList<>(found.size());
+            for (String text : found.values()) {
+                int total = 0;
+                for (Segment segment : segments) {
+                    total += trie.apply(segment).weight(text);
+                }
+                ranked.add(new CompletionTrie.Completion(text, total));
+            }
+            // Stable, so equal totals keep the order the segments gave them
+            ranked.sort((a, b) -> Integer.compare(b.weight(), a.weight()));
+            if (unseen == 0 || (ranked.size() >= k && ranked.get(k - 1).weight() >= unseen)
+                    || depth >= MAX_COMPLETION_DEPTH) {
+                List<String> texts = new ArrayList<>(Math.min(k, ranked.size()));
+                for (int i = 0; i < k && i < ranked.size(); i++) {
+                    texts.add(ranked.get(i).text());
+                }
+                return texts;
+            }
+        }
+    }
+
+    private void append(ColumnStore catalog) throws IOException {
+        if (isReadOnly()) {
+            throw new IOException(directory + " is in use by another process; this library is read-only");
+        }
+        Segment segment = persist(catalog);
+        synchronized (writeLock) {
+            Segment[] current = snapshot.segments;
+            Segment[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = segment;
+            publish(next, snapshot.version + 1);
+        }
+        merger.execute(this::mergeSegments);
+    }
+
+    // Build the segment; when the library is stored on disk, write it with its indexes and map it
+    private Segment persist(ColumnStore catalog) throws IOException {
+        Segment built = Segment.build(catalog, null);
+        if (directory == null) {
+            return built;
+        }
+        Path file = directory.resolve(String.format("segment-%08d.seg", nextGeneration.getAndIncrement()));
+        built.write(file);
+        return Segment.open(file);
+    }
+
+    // Record the new segment list in the manifest, then make it visible to readers; called under writeLock
+    private void publish(Segment[] segments, long version) throws IOException {
+        if (directory != null) {
+            StringBuilder names = new StringBuilder();
+            for (Segment segment : segments) {
+                names.append(segment.file().getFileName()).append('\n');
+            }
+            Path partial = directory.resolve(MANIFEST + ".tmp");
+            Files.writeString(partial, names, StandardCharsets.UTF_8);
+            Files.move(partial, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        snapshot = new Snapshot(segments, version);
+    }
+
+    // Runs on the merge thread only, so at most one merge is in flight. Adds only ever append
+    // segments, so the run being merged is still contiguous when it is swapped out.
+    private void mergeSegments() {
+        try {
+            Segment[] run;
+            while ((run = pickMerge(snapshot.segments, Math.max(MIN_SEGMENT_CAP, snapshot.size() / CORES))) != null) {
+                ColumnStore.Builder merged = new ColumnStore.Builder();
+                for (Segment segment : run) {
+                    for (int row = 0; row < segment.rows(); row++) {
+                        merged.add(segment.catalog().book(row));
+                    }
+                }
+                Segment segment = persist(merged.build());
+                synchronized (writeLock) {
+                    Segment[] current = snapshot.segments;
+                    int first = Arrays.asList(current).indexOf(run[0]);
+                    Segment[] next = new Segment[current.length - run.length + 1];
+                    System.arraycopy(current, 0, next, 0, first);
+                    next[first] = segment;
+                    System.arraycopy(current, first + run.length, next, first + 1, current.length - first - run.length);
+                    publish(next, snapshot.version);
+                }
+                // Searches still holding the old snapshot keep their mappings after the files are unlinked
+                for (Segment old : run) {
+                    if (old.file() != null) {
+                        Files.deleteIfExists(old.file());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // The segments stay as they are; the next add tries the merge again
+        }
+    }
+
+    // The oldest run that starts with a segment of some size tier (tiers are a factor of
+    // MERGE_FACTOR apart) and holds MERGE_FACTOR segments of that tier, or null if there is none.
+    // Smaller segments inside the run are merged along with it rather than being left stranded
+    // between larger ones. Runs that would make a segment of more than maxRows are left alone.
+    private static Segment[] pickMerge(Segment[] segments, int maxRows) {
+        for (int start = 0; start < segments.length; start++) {
+            int tier = tier(segments[start]);
+            int count = 0;
+            long rows = 0;
+            for (int end = start; end < segments.length && tier(segments[end]) <= tier; end++) {
+                rows += segments[end].rows();
+                if (rows > maxRows) {
+                    break;
+                }
+                if (tier(segments[end]) == tier && ++count == MERGE_FACTOR) {
+                    return Arrays.copyOfRange(segments, start, end + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int tier(Segment segment) {
+        int tier = 0;
+        for (long rows = segment.rows(); rows >= MERGE_FACTOR; rows /= MERGE_FACTOR) {
+            tier++;
+        }
+        return tier;
+    }
+
+    private static long generation(String name) {
+        try {
+            return Long.parseLong(name.substring("segment-".length(), name.indexOf('.')));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    // The segments visible to searches, with the catalog id of each one's first row
+    private static final class Snapshot {
+        final Segment[] segments;
+        final int[] starts;
+        final long version;
+
+        Snapshot(Segment[] segments, long version) {
+            this.segments = segments;
+            this.version = version;
+            this.starts = new int[segments.length + 1];
+            for (int s = 0; s < segments.length; s++) {
+                starts[s + 1] = starts[s] + segments[s].rows();
+            }
+        }
+
+        int size() {
+            return starts[segments.length];
+        }
+
+        int segmentOf(int id) {
+            if (id < 0 || id >= size()) {
+                throw new IndexOutOfBoundsException("No book with id " + id);
+            }
+            int s = Arrays.binarySearch(starts, 0, segments.length, id);
+            return s >= 0 ? s : -s - 2;
+        }
+
+        // A segment's hits as catalog ids, kept in a heap that other segments' hits can be merged into
+        TopK offset(int segment, List<TopK.Hit> hits, int limit) {
+            TopK top = new TopK(limit);
+            for (TopK.Hit hit : hits) {
+                top.offer(starts[segment] + hit.doc(), hit.score());
+            }
+            return top;
+        }
+
+        List<Book> books(int segment, int[] rows) {
+            List<Book> books = new ArrayList<>(rows.length);
+            for (int row : rows) {
+                books.add(segments[segment].catalog().book(row, starts[segment] + row));
+            }
+            return books;
+        }
+
+        List<Book> toBooks(List<TopK.Hit> hits) {
+            List<Book> books = new ArrayList<>(hits.size());
+            for (TopK.Hit hit : hits) {
+                int s = segmentOf(hit.doc());
+                books.add(segments[s].catalog().book(hit.doc() - starts[s], hit.doc()));
+            }
+            return books;
+        }
+    }
+
+    // Splits a range of segments in halves until each task searches one segment
+    private static final class FanOut<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        private final IntFunction<T> search;
+        private final BinaryOperator<T> combine;
+        private final int from;
+        private final int to;
+
+        FanOut(IntFunction<T> search, BinaryOperator<T> combine, int from, int to) {
+            this.search = search;
+            this.combine = combine;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from == 1) {
+                return search.apply(from);
+            }
+            int middle = (from + to) >>> 1;
+            FanOut<T> right = new FanOut<>(search, combine, middle, to);
+            right.fork();
+            T left = new FanOut<>(search, combine, from, middle).compute();
+            return combine.apply(left, right.join());
+        }
+    }
+}
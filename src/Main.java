@@ -1,13 +1,87 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
 
 public class Main {
     // Scanner object for user input
     private static final Scanner scanner = new Scanner(System.in);
 
+    // Local catalog searched by the menu options
+    private static final Path CATALOG_PATH = Path.of("data", "books.tsv");
+    private static final int MAX_RESULTS = 10;
+    private static final int MAX_COMPLETIONS = 5;
+    private static final int MAX_SIMILAR = 5;
+    // Upstream request budget: overall and per tenant, in requests per second with a burst allowance
+    private static final double UPSTREAM_RATE = 10;
+    private static final int UPSTREAM_BURST = 20;
+    private static final double TENANT_RATE = 2;
+    private static final int TENANT_BURST = 5;
+    // Upstream results persist here between runs
+    private static final Path CACHE_PATH = Path.of(System.getProperty("booksage.cache.dir", "cache"), "results.seg");
+    private static final int CACHE_CAPACITY = 64 << 20;
+    private static final int DEFAULT_PORT = 8080;
+    // Reverse proxies whose X-BookSage-Tenant header the server believes, comma-separated
+    private static final String TRUSTED_PROXIES = System.getProperty("booksage.trusted.proxies", "");
+    // Batch queries in flight at once: enough to keep every core busy while some wait on Google Books
+    private static final int BATCH_PARALLELISM = 2 * Runtime.getRuntime().availableProcessors();
+    // Index segments persist here; the catalog file is indexed into it on first start
+    private static final Path INDEX_DIR = Path.of(System.getProperty("booksage.index.dir", "index"));
+    private static final int RULE_WIDTH = 40;
+    private static Library library;
+    private static SearchService service;
+    // Everything the menu prints goes through one buffer, flushed once per response
+    private static final ConsoleWriter console = ConsoleWriter.stdout();
+    // Where startup messages and warnings go: stderr in batch mode, where stdout carries results
+    private static ConsoleWriter status = console;
+
     public static void main(String[] args) {
-        // Display welcome message
-        System.out.println("Welcome to BookSage!");
-        System.out.println("Your personal book discovery assistant\n");
+        // "import <dump> [catalog]" converts a catalog dump instead of starting the menu
+        if (args.length > 0 && args[0].equals("import")) {
+            runImport(args);
+            return;
+        }
+
+        // "batch [file]" runs queries from a file or stdin, printing JSON lines and nothing else to stdout
+        boolean batch = args.length > 0 && args[0].equals("batch");
+        if (batch) {
+            status = new ConsoleWriter(System.err, Charset.defaultCharset());
+        } else {
+            // Display welcome message
+            console.println("Welcome to BookSage!");
+            console.println("Your personal book discovery assistant\n");
+            console.flush();
+        }
+
+        // Build the in-memory indexes once, before the first search
+        library = loadLibrary();
+        // Fall back to Google Books when the local catalog has no match, unless running offline
+        BooksApiClient upstream = Boolean.getBoolean("booksage.offline") ? null : BooksApiClient.fromEnvironment();
+        RateLimiter limiter = new RateLimiter(UPSTREAM_RATE, UPSTREAM_BURST, TENANT_RATE, TENANT_BURST);
+        DiskCache diskCache = openDiskCache();
+        service = new SearchService(library, upstream, limiter, diskCache);
+        status.flush();
+
+        if (batch) {
+            runBatch(args);
+            closeResources(diskCache);
+            return;
+        }
+        // "serve [port]" answers searches over HTTP instead of running the menu
+        if (args.length > 0 && args[0].equals("serve")) {
+            serve(args, diskCache);
+            return;
+        }
 
         // Main program loop
         boolean running = true;
@@ -19,18 +93,173 @@ public class Main {
 
         // Clean up resources
         scanner.close();
-        System.out.println("Thank you for using BookSage. Goodbye!");
+        closeResources(diskCache);
+        console.println("Thank you for using BookSage. Goodbye!");
+        console.flush();
+    }
+
+    // Serve until the process is stopped; the server's threads keep the JVM running after main returns
+    private static void serve(String[] args, DiskCache diskCache) {
+        int port = DEFAULT_PORT;
+        try {
+            port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+            BookServer server = BookServer.start(service, port, trustedProxies());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                closeResources(diskCache);
+            }));
+            console.print("Serving searches on http://localhost:").print(server.port())
+                    .print("/search/{title,author,genre}?q=...")
+                    .println(BookServer.virtualThreads() ? " (virtual threads)" : "");
+        } catch (NumberFormatException e) {
+            console.print("Invalid port: ").println(args[1]);
+            closeResources(diskCache);
+        } catch (UnknownHostException e) {
+            console.print("Invalid trusted proxy address: ").println(e.getMessage());
+            closeResources(diskCache);
+        } catch (IOException e) {
+            console.print("Could not listen on port ").print(port).print(": ").println(e.getMessage());
+            closeResources(diskCache);
+        }
+        console.flush();
+    }
+
+    // The addresses named in booksage.trusted.proxies
+    private static Set<InetAddress> trustedProxies() throws UnknownHostException {
+        Set<InetAddress> proxies = new HashSet<>();
+        for (String address : TRUSTED_PROXIES.split(",")) {
+            if (!address.isBlank()) {
+                proxies.add(InetAddress.getByName(address.trim()));
+            }
+        }
+        return proxies;
+    }
+
+    // Run every query in the batch input, BATCH_PARALLELISM at a time, with results in input order
+    private static void runBatch(String[] args) {
+        boolean fromStdin = args.length < 2 || args[1].equals("-");
+        long started = System.nanoTime();
+        try (BufferedReader in = fromStdin
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(args[1]), StandardCharsets.UTF_8)) {
+            // JSON lines are UTF-8 whatever the platform encoding
+            ConsoleWriter out = new ConsoleWriter(System.out, StandardCharsets.UTF_8);
+            BatchRunner.Summary summary = new BatchRunner(service, BATCH_PARALLELISM).run(in, out);
+            status.println(String.format("Ran %d queries (%d failed) in %.1f s.",
+                    summary.queries(), summary.failed(), (System.nanoTime() - started) / 1e9));
+        } catch (IOException e) {
+            status.print("Batch failed: ").println(e.getMessage());
+        }
+        status.flush();
+    }
+
+    private static void closeResources(DiskCache diskCache) {
+        library.close();
+        if (diskCache != null) {
+            try {
+                diskCache.close();
+            } catch (IOException e) {
+                status.print("Could not flush result cache: ").println(e.getMessage());
+            }
+        }
+        status.flush();
+    }
+
+    // Stream a dump into a catalog file, or when none is given, into the index as new segments
+    private static void runImport(String[] args) {
+        if (args.length < 2) {
+            console.println("Usage: import <dump.jsonl|dump.tsv[.gz]> [catalog.tsv]");
+            console.flush();
+            return;
+        }
+        Path dump = Path.of(args[1]);
+        boolean toIndex = args.length < 3;
+        Path output = toIndex ? INDEX_DIR : Path.of(args[2]);
+        console.print("Importing ").print(dump.toString()).print(" into ").print(output.toString()).println("...");
+        console.flush();
+        long started = System.nanoTime();
+        try {
+            if (!toIndex) {
+                printImported(BulkImporter.forThisMachine(Main::printImportProgress).run(dump, output), started);
+                return;
+            }
+            try (Library index = Library.open(INDEX_DIR)) {
+                if (index.isReadOnly()) {
+                    console.print(INDEX_DIR.toString()).println(" is in use by another process; nothing imported.");
+                    return;
+                }
+                printImported(BulkImporter.forThisMachine(Main::printImportProgress).run(dump, index), started);
+                console.print("The index now holds ").print(index.size()).println(" books; finishing merges...");
+                console.flush();
+            }
+        } catch (IOException e) {
+            console.print("Import failed: ").println(e.getMessage());
+        } finally {
+            console.flush();
+        }
+    }
+
+    private static void printImportProgress(long read, long written) {
+        console.print("  ").print(read).print(" lines read, ").print(written).println(" books written");
+        console.flush();
+    }
+
+    private static void printImported(BulkImporter.Summary summary, long started) {
+        console.println(String.format("Imported %d books from %d lines in %.1f s (%d unreadable, %d duplicates).",
+                summary.written(), summary.read(), (System.nanoTime() - started) / 1e9,
+                summary.rejected(), summary.duplicates()));
+        console.flush();
+    }
+
+    // Open the index, building it from the local catalog the first time, and fall back to an
+    // empty library if neither is available
+    private static Library loadLibrary() {
+        try {
+            Library loaded = Library.open(INDEX_DIR);
+            if (loaded.isReadOnly()) {
+                status.print(INDEX_DIR.toString()).println(" is in use by another process; searching it read-only.");
+            }
+            if (loaded.size() > 0) {
+                status.print("Loaded ").print(loaded.size()).print(" books from ").print(INDEX_DIR.toString()).println(".");
+            } else if (Files.exists(CATALOG_PATH) && loaded.isReadOnly()) {
+                // Nothing indexed yet, and only the owner may index it, so search the catalog in memory
+                loaded.close();
+                loaded = Library.load(CATALOG_PATH);
+                status.print("Loaded ").print(loaded.size()).print(" books from ").print(CATALOG_PATH.toString()).println(".");
+            } else if (Files.exists(CATALOG_PATH)) {
+                loaded.addCatalog(CATALOG_PATH);
+                status.print("Indexed ").print(loaded.size()).print(" books from ").print(CATALOG_PATH.toString())
+                        .print(" into ").print(INDEX_DIR.toString()).println(".");
+            } else {
+                status.print("No local catalog found at ").print(CATALOG_PATH.toString()).println(".");
+            }
+            return loaded;
+        } catch (IOException e) {
+            status.print("Could not read catalog: ").println(e.getMessage());
+            return new Library(List.of());
+        }
+    }
+
+    // Open the persistent result cache; searches still work without it
+    private static DiskCache openDiskCache() {
+        try {
+            return DiskCache.open(CACHE_PATH, CACHE_CAPACITY);
+        } catch (IOException e) {
+            status.print("Result cache unavailable: ").println(e.getMessage());
+            return null;
+        }
     }
 
     // Display the main menu options
     private static void displayMenu() {
-        System.out.println("\n" + "-".repeat(40));
-        System.out.println("Please select an option:");
-        System.out.println("1. Search by genre");
-        System.out.println("2. Search by author");
-        System.out.println("3. Search by book title");
-        System.out.println("4. Exit");
-        System.out.println("-".repeat(40));
+        console.println().repeat('-', RULE_WIDTH).println();
+        console.println("Please select an option:");
+        console.println("1. Search by genre");
+        console.println("2. Search by author");
+        console.println("3. Search by book title");
+        console.println("4. Autocomplete a title or author");
+        console.println("5. Exit");
+        console.repeat('-', RULE_WIDTH).println();
     }
 
     // Get and validate user input
@@ -39,16 +268,18 @@ public class Main {
         boolean validInput = false;
 
         while (!validInput) {
-            System.out.print("Enter your choice (1-4): ");
+            console.print("Enter your choice (1-5): ");
+            // The menu and any previous error go out together, as one write
+            console.flush();
             try {
                 choice = Integer.parseInt(scanner.nextLine().trim());
-                if (choice >= 1 && choice <= 4) {
+                if (choice >= 1 && choice <= 5) {
                     validInput = true;
                 } else {
-                    System.out.println("Invalid selection. Please enter a number between 1 and 4.");
+                    console.println("Invalid selection. Please enter a number between 1 and 5.");
                 }
             } catch (NumberFormatException e) {
-                System.out.println("Invalid input. Please enter a number.");
+                console.println("Invalid input. Please enter a number.");
             }
         }
 
@@ -68,23 +299,152 @@ public class Main {
                 searchByTitle();
                 return true;
             case 4:
+                autocomplete();
+                return true;
+            case 5:
                 return false;
             default:
                 return true;
         }
     }
 
-    // Placeholder methods for search functionality
+    // Filter books by genre; genres can be combined with AND, OR and NOT
     private static void searchByGenre() {
-        System.out.println("\nSearching by genre... (Feature coming soon)");
+        console.print("\nAvailable genres: ");
+        printJoined(library.genres());
+        console.println();
+        console.print("Enter a genre (e.g. fantasy AND young adult NOT romance): ");
+        console.flush();
+        String query = scanner.nextLine().trim();
+        try (PageIterator pages = service.pages(SearchService.CONSOLE_TENANT, SearchType.GENRE, query, MAX_RESULTS)) {
+            int shown = 0;
+            while (pages.hasNext()) {
+                List<Book> page = pages.next();
+                printResults(page, shown);
+                shown += page.size();
+                if (page.size() < MAX_RESULTS || !pages.hasNext()) {
+                    return;
+                }
+                console.print("Press Enter for more, or q to go back: ");
+                console.flush();
+                if (!scanner.hasNextLine() || scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    return;
+                }
+            }
+        } catch (CompletionException e) {
+            reportFailure(e);
+        }
     }
 
+    // Find books by author; close misspellings still match
     private static void searchByAuthor() {
-        System.out.println("\nSearching by author... (Feature coming soon)");
+        console.print("\nEnter an author: ");
+        console.flush();
+        String query = scanner.nextLine().trim();
+        printResults(runSearch(SearchType.AUTHOR, query));
     }
 
+    // Look up books by title, ranked by relevance across title, subtitle and description, then
+    // recommend books like the best match
     private static void searchByTitle() {
-        System.out.println("\nSearching by title... (Feature coming soon)");
+        console.print("\nEnter a title: ");
+        console.flush();
+        String query = scanner.nextLine().trim();
+        List<Book> results = runSearch(SearchType.TITLE, query);
+        printResults(results);
+        if (results == null || results.isEmpty()) {
+            return;
+        }
+        List<Book> similar = library.similar(results.get(0), MAX_SIMILAR);
+        if (!similar.isEmpty()) {
+            console.print("\nIf you like ").print(results.get(0).title()).println(", try:");
+            for (Book book : similar) {
+                console.print("  - ");
+                printBook(book);
+            }
+        }
+    }
+
+    // Suggest titles and authors that start with what the user has typed so far
+    private static void autocomplete() {
+        console.print("\nStart typing a title or author: ");
+        console.flush();
+        String prefix = scanner.nextLine();
+        List<String> titles = library.completeTitle(prefix, MAX_COMPLETIONS);
+        List<String> authors = library.completeAuthor(prefix, MAX_COMPLETIONS);
+        if (titles.isEmpty() && authors.isEmpty()) {
+            console.println("No suggestions.");
+            return;
+        }
+        for (String title : titles) {
+            console.print("  [title]  ").println(title);
+        }
+        for (String author : authors) {
+            console.print("  [author] ").println(author);
+        }
+    }
+
+    // Run a search and wait for its results; failures are reported and yield null
+    private static List<Book> runSearch(SearchType type, String query) {
+        try {
+            return service.search(type, query, MAX_RESULTS).join();
+        } catch (CompletionException e) {
+            reportFailure(e);
+            return null;
+        }
+    }
+
+    private static void reportFailure(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IllegalArgumentException) {
+            console.print("Invalid query: ").println(cause.getMessage());
+        } else {
+            String reason = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+            console.print("Search failed: ").println(reason);
+        }
+    }
+
+    // Print a numbered list of books, or a notice when nothing matched
+    private static void printResults(List<Book> results) {
+        if (results != null) {
+            printResults(results, 0);
+        }
+    }
+
+    // Numbering continues after the books already shown on earlier pages
+    private static void printResults(List<Book> results, int shown) {
+        if (results.isEmpty()) {
+            console.println(shown == 0 ? "No books found." : "No more books.");
+            return;
+        }
+        for (int i = 0; i < results.size(); i++) {
+            console.print(shown + i + 1).print(". ");
+            printBook(results.get(i));
+        }
+    }
+
+    // Title and authors on one line, printed piece by piece so no per-line strings are built
+    // just to be copied out
+    private static void printBook(Book book) {
+        console.print(book.title());
+        if (!book.subtitle().isEmpty()) {
+            console.print(": ").print(book.subtitle());
+        }
+        if (!book.authors().isEmpty()) {
+            console.print(" by ");
+            printJoined(book.authors());
+        }
+        console.println();
+    }
+
+    // Items separated by ", ", as String.join would give them
+    private static void printJoined(List<String> items) {
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                console.print(", ");
+            }
+            console.print(items.get(i));
+        }
     }
 }
 
@@ -0,0 +1,152 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Walks a result list one display page at a time while later pages are already being fetched.
+// Results are requested in chunks that run ahead of the reader: the look-ahead depth follows the
+// ratio of fetch latency to how long the reader spends on a page, and the chunk size grows when
+// fetches are slow (fewer round trips) and shrinks back when they are fast.
+// Google Books can return fewer results than asked for well before the end of the list, so only
+// an empty chunk ends it. A chunk that fails is asked for again on the next call to next().
+// Not thread-safe; meant to be driven by a single reader.
+public final class PageIterator implements AutoCloseable {
+    // Google Books returns at most 40 volumes per request
+    static final int MAX_CHUNK = 40;
+    private static final int MAX_DEPTH = 3;
+    private static final long SLOW_NANOS = 300_000_000L;
+    private static final long FAST_NANOS = 100_000_000L;
+    // Weight of the newest sample in the moving averages
+    private static final double ALPHA = 0.3;
+
+    // Fetches up to count results starting at startIndex; none means the list has ended
+    @FunctionalInterface
+    public interface PageSource {
+        CompletableFuture<List<Book>> fetch(int startIndex, int count);
+    }
+
+    private final PageSource source;
+    private final int pageSize;
+    private final Deque<Chunk> pending = new ArrayDeque<>();
+    private final Deque<Book> buffered = new ArrayDeque<>();
+    private int nextStart;
+    private int pendingCount;
+    private boolean exhausted;
+    private int chunkSize;
+
+    // Moving averages in nanoseconds; latency is written from completion callbacks
+    private volatile double latency;
+    private double dwell;
+    private long lastPageAt;
+
+    public PageIterator(PageSource source, int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_CHUNK) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_CHUNK);
+        }
+        this.source = source;
+        this.pageSize = pageSize;
+        this.chunkSize = pageSize;
+    }
+
+    // Whether another page may follow; the last page can turn out to be empty
+    public boolean hasNext() {
+        return !buffered.isEmpty() || !exhausted;
+    }
+
+    // The next page, waiting only if its chunk has not arrived yet; failures surface as
+    // CompletionException, and the failed chunk and those after it are fetched again next time
+    public List<Book> next() {
+        long now = System.nanoTime();
+        if (lastPageAt != 0) {
+            dwell = average(dwell, now - lastPageAt);
+        }
+        while (buffered.size() < pageSize && !exhausted) {
+            if (pending.isEmpty()) {
+                request();
+            }
+            Chunk chunk = pending.removeFirst();
+            pendingCount -= chunk.count;
+            List<Book> books;
+            try {
+                books = chunk.future.join();
+            } catch (RuntimeException e) {
+                // Later chunks may have succeeded, but their books must not go ahead of this one's
+                close();
+                nextStart = chunk.start;
+                throw e;
+            }
+            buffered.addAll(books);
+            if (books.isEmpty()) {
+                exhausted = true;
+                close();
+            }
+        }
+        List<Book> page = new ArrayList<>(Math.min(pageSize, buffered.size()));
+        while (page.size() < pageSize && !buffered.isEmpty()) {
+            page.add(buffered.removeFirst());
+        }
+        adapt();
+        prefetch();
+        lastPageAt = System.nanoTime();
+        return page;
+    }
+
+    // Stop waiting for pages that were fetched ahead
+    @Override
+    public void close() {
+        for (Chunk chunk : pending) {
+            chunk.future.cancel(false);
+        }
+        pending.clear();
+        pendingCount = 0;
+    }
+
+    // Pages to keep in flight beyond the one being read
+    int depth() {
+        if (dwell <= 0) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min(MAX_DEPTH, Math.ceil(latency / dwell)));
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    private void adapt() {
+        if (latency > SLOW_NANOS) {
+            chunkSize = Math.min(MAX_CHUNK, chunkSize * 2);
+        } else if (latency < FAST_NANOS) {
+            chunkSize = Math.max(pageSize, chunkSize / 2);
+        }
+    }
+
+    private void prefetch() {
+        int wanted = depth() * pageSize;
+        while (!exhausted && buffered.size() + pendingCount < wanted) {
+            request();
+        }
+    }
+
+    private void request() {
+        int count = chunkSize;
+        long started = System.nanoTime();
+        CompletableFuture<List<Book>> future = source.fetch(nextStart, count);
+        future.whenComplete((books, error) -> {
+            if (error == null) {
+                latency = average(latency, System.nanoTime() - started);
+            }
+        });
+        pending.addLast(new Chunk(future, nextStart, count));
+        pendingCount += count;
+        nextStart += count;
+    }
+
+    private static double average(double current, long sample) {
+        return current == 0 ? sample : current + ALPHA * (sample - current);
+    }
+
+    private record Chunk(CompletableFuture<List<Book>> future, int start, int count) {
+    }
+}
@@ -0,0 +1,8 @@
+// Identity of one upstream result page; queries that differ only in case, accents or spacing
+// share a key, so "Stephen King" and "  stephen   king" are the same request
+public record QueryKey(SearchType type, String query, int startIndex, int count) {
+
+    public static QueryKey of(SearchType type, String query, int startIndex, int count) {
+        return new QueryKey(type, String.join(" ", Tokenizer.normalize(query).trim().split("\\s+")), startIndex, count);
+    }
+}
@@ -0,0 +1,8 @@
+// Raised when a request would have to wait past its deadline for an upstream permit
+public class RateLimitedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public RateLimitedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lock-free token-bucket rate limiter with a global bucket and one sub-bucket per tenant.
+// Each bucket is a single AtomicLong holding its "theoretical arrival time" (the GCRA form of a
+// token bucket): taking a permit is one compare-and-set that may push that time into the future.
+// A caller whose permit lands in the future is parked on a timer rather than a thread, which
+// makes the buckets behave like FIFO queues; if the wait would pass the caller's deadline the
+// reservation is not made and the request fails fast instead.
+//
+// At most MAX_TENANTS tenants have a bucket of their own. A full bucket holds no state worth
+// keeping, so once the map is full, buckets that have refilled are swept out of it, at most once
+// per refill period so the sweeps cost O(1) per acquire amortized. Tenants that arrive while the
+// map is full of busy buckets share one overflow bucket with the per-tenant rate until a sweep
+// makes room.
+public final class RateLimiter {
+    static final int MAX_TENANTS = 10_000;
+
+    private final Bucket global;
+    private final double tenantRate;
+    private final int tenantBurst;
+    private final ConcurrentHashMap<String, Bucket> tenants = new ConcurrentHashMap<>();
+    private final Bucket overflow;
+    // Time before which the map is not swept again; a bucket takes this long to refill
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+    private final long sweepInterval;
+
+    // Rates are permits per second; bursts are how many permits may be taken back to back
+    public RateLimiter(double globalRate, int globalBurst, double tenantRate, int tenantBurst) {
+        this.global = new Bucket(globalRate, globalBurst);
+        this.tenantRate = tenantRate;
+        this.tenantBurst = tenantBurst;
+        this.overflow = new Bucket(tenantRate, tenantBurst);
+        this.sweepInterval = overflow.interval + overflow.tolerance;
+    }
+
+    // Completes when a permit for tenant is available, or fails at once with RateLimitedException
+    // if that would take longer than maxWait
+    public CompletableFuture<Void> acquire(String tenant, long maxWait, TimeUnit unit) {
+        long now = System.nanoTime();
+        long budget = unit.toNanos(maxWait);
+
+        Bucket own;
+        long ownWait;
+        while (true) {
+            own = tenantBucket(tenant, now);
+            ownWait = own.reserve(now, budget);
+            if (ownWait < 0) {
+                return CompletableFuture.failedFuture(new RateLimitedException("Rate limit exceeded for " + tenant));
+            }
+            // A sweep may have taken the bucket out of the map just before the reservation; the
+            // permit would then be lost with it, so take it again from the tenant's new bucket
+            if (own == overflow || tenants.get(tenant) == own) {
+                break;
+            }
+            own.refund();
+        }
+        long globalWait = global.reserve(now, budget);
+        if (globalWait < 0) {
+            own.refund();
+            return CompletableFuture.failedFuture(new RateLimitedException("Upstream rate limit exceeded"));
+        }
+
+        long wait = Math.max(ownWait, globalWait);
+        if (wait == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS));
+    }
+
+    private Bucket tenantBucket(String tenant, long now) {
+        Bucket bucket = tenants.get(tenant);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (tenants.size() >= MAX_TENANTS) {
+            long due = nextSweep.get();
+            if (now - due >= 0 && nextSweep.compareAndSet(due, now + sweepInterval)) {
+                sweep(now);
+            }
+            if (tenants.size() >= MAX_TENANTS) {
+                return overflow;
+            }
+        }
+        return tenants.computeIfAbsent(tenant, t -> new Bucket(tenantRate, tenantBurst));
+    }
+
+    // Drop the buckets that have refilled; remove(key, value) leaves a bucket that was replaced
+    // meanwhile alone
+    private void sweep(long now) {
+        for (Map.Entry<String, Bucket> entry : tenants.entrySet()) {
+            if (entry.getValue().isIdle(now)) {
+                tenants.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public int tenantCount() {
+        return tenants.size();
+    }
+
+    private static final class Bucket {
+        private final long interval;
+        private final long tolerance;
+        // Time at which the bucket would be completely full again; starts in the past
+        private final AtomicLong arrival = new AtomicLong(Long.MIN_VALUE / 2);
+
+        Bucket(double ratePerSecond, int burst) {
+            this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+            this.tolerance = interval * Math.max(0, burst - 1);
+        }
+
+        // Nanoseconds until the reserved permit may be used, or -1 without reserving if that exceeds budget
+        long reserve(long now, long budget) {
+            while (true) {
+                long current = arrival.get();
+                long start = Math.max(current, now);
+                long wait = Math.max(0, start - tolerance - now);
+                if (wait > budget) {
+                    return -1;
+                }
+                if (arrival.compareAndSet(current, start + interval)) {
+                    return wait;
+                }
+            }
+        }
+
+        // Give back a permit taken by reserve when the request did not go ahead after all
+        void refund() {
+            arrival.addAndGet(-interval);
+        }
+
+        boolean isIdle(long now) {
+            return arrival.get() <= now;
+        }
+    }
+}
@@ -0,0 +1,590 @@
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+// Immutable compressed set of non-negative int ids in the style of Roaring bitmaps.
+// Ids are split into 16-bit chunks by their high bits; each chunk stores its low bits either
+// as a sorted char[] (sparse, up to 4096 values) or as a 65536-bit bitmap (dense).
+public final class RoaringBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    public static final RoaringBitmap EMPTY = new RoaringBitmap(new char[0], new Container[0], 0);
+
+    private final char[] keys;
+    private final Container[] containers;
+    private final int cardinality;
+
+    private RoaringBitmap(char[] keys, Container[] containers, int cardinality) {
+        this.keys = keys;
+        this.containers = containers;
+        this.cardinality = cardinality;
+    }
+
+    // Bitmap holding every id in [0, size)
+    public static RoaringBitmap range(int size) {
+        Builder builder = new Builder();
+        for (int id = 0; id < size; id++) {
+            builder.add(id);
+        }
+        return builder.build();
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    public boolean contains(int id) {
+        int index = Arrays.binarySearch(keys, (char) (id >>> 16));
+        return index >= 0 && containers[index].contains((char) id);
+    }
+
+    public RoaringBitmap and(RoaringBitmap other) {
+        Combiner result = new Combiner(Math.min(keys.length, other.keys.length));
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.add(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result.build();
+    }
+
+    public RoaringBitmap or(RoaringBitmap other) {
+        Combiner result = new Combiner(keys.length + other.keys.length);
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                result.add(keys[i], containers[i]);
+                i++;
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                result.add(other.keys[j], other.containers[j]);
+                j++;
+            } else {
+                result.add(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result.build();
+    }
+
+    // Ids in this bitmap that are not in other
+    public RoaringBitmap andNot(RoaringBitmap other) {
+        Combiner result = new Combiner(keys.length);
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.keys.length && other.keys[j] == keys[i]) {
+                result.add(keys[i], containers[i].andNot(other.containers[j]));
+            } else {
+                result.add(keys[i], containers[i]);
+            }
+        }
+        return result.build();
+    }
+
+    // Up to limit ids in ascending order
+    public int[] toArray(int limit) {
+        int[] ids = new int[Math.min(limit, cardinality)];
+        int count = 0;
+        for (int i = 0; i < keys.length && count < ids.length; i++) {
+            count = containers[i].copyTo(ids, count, keys[i] << 16);
+        }
+        return ids;
+    }
+
+    // Store the bitmap in a segment's index section: the chunk keys, each container's cardinality
+    // (negated for a bitmap container), then the values of all array containers end to end and
+    // the words of all bitmap containers end to end
+    void write(IndexFile.Writer out) throws IOException {
+        int[] sizes = new int[containers.length];
+        int valueCount = 0;
+        int bitmapCount = 0;
+        for (int i = 0; i < containers.length; i++) {
+            if (containers[i] instanceof BitmapContainer) {
+                sizes[i] = -containers[i].cardinality();
+                bitmapCount++;
+            } else {
+                sizes[i] = containers[i].cardinality();
+                valueCount += sizes[i];
+            }
+        }
+        char[] values = new char[valueCount];
+        long[] words = new long[bitmapCount * BITMAP_WORDS];
+        int v = 0;
+        int w = 0;
+        for (Container container : containers) {
+            if (container instanceof BitmapContainer) {
+                System.arraycopy(((BitmapContainer) container).words, 0, words, w, BITMAP_WORDS);
+                w += BITMAP_WORDS;
+            } else {
+                char[] own = ((ArrayContainer) container).values;
+                System.arraycopy(own, 0, values, v, own.length);
+                v += own.length;
+            }
+        }
+        out.chars(CharBuffer.wrap(keys));
+        out.ints(IntBuffer.wrap(sizes));
+        out.chars(CharBuffer.wrap(values));
+        out.longs(LongBuffer.wrap(words));
+    }
+
+    // The bitmap write() stored. Containers are copied out of the mapping in bulk rather than
+    // mapped, so set operations keep working on arrays; that is still no more than a copy.
+    static RoaringBitmap read(IndexFile.Reader in) throws IOException {
+        CharBuffer keyBuffer = in.chars();
+        IntBuffer sizes = in.ints();
+        CharBuffer values = in.chars();
+        LongBuffer words = in.longs();
+        long valueCount = 0;
+        long wordCount = 0;
+        for (int i = 0; i < sizes.limit(); i++) {
+            int size = sizes.get(i);
+            if (size > 0) {
+                valueCount += size;
+            } else if (size < 0) {
+                wordCount += BITMAP_WORDS;
+            } else {
+                throw new IOException("Segment indexes are truncated or corrupt");
+            }
+        }
+        if (sizes.limit() != keyBuffer.limit() || valueCount != values.limit() || wordCount != words.limit()) {
+            throw new IOException("Segment indexes are truncated or corrupt");
+        }
+        if (sizes.limit() == 0) {
+            return EMPTY;
+        }
+
+        char[] keys = new char[keyBuffer.limit()];
+        keyBuffer.get(0, keys);
+        Container[] containers = new Container[keys.length];
+        int cardinality = 0;
+        int v = 0;
+        int w = 0;
+        for (int i = 0; i < containers.length; i++) {
+            int size = sizes.get(i);
+            if (size > 0) {
+                char[] own = new char[size];
+                values.get(v, own);
+                v += size;
+                containers[i] = new ArrayContainer(own);
+                cardinality += size;
+            } else {
+                long[] own = new long[BITMAP_WORDS];
+                words.get(w, own);
+                w += BITMAP_WORDS;
+                containers[i] = new BitmapContainer(own, -size);
+                cardinality -= size;
+            }
+        }
+        return new RoaringBitmap(keys, containers, cardinality);
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    // Forward-only iterator over the ids in ascending order; doc() is NO_MORE_DOCS once exhausted
+    public final class Cursor {
+        public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+        private int chunk;
+        private int doc = -1;
+
+        private Cursor() {
+            advance(0);
+        }
+
+        public int doc() {
+            return doc;
+        }
+
+        public void next() {
+            if (doc != NO_MORE_DOCS) {
+                advance(doc + 1);
+            }
+        }
+
+        // Move to the first id >= target
+        public void advance(int target) {
+            int high = target >>> 16;
+            chunk = seek(high);
+            while (chunk < keys.length) {
+                int from = keys[chunk] == high ? target & 0xFFFF : 0;
+                int low = containers[chunk].nextValue(from);
+                if (low >= 0) {
+                    doc = (keys[chunk] << 16) | low;
+                    return;
+                }
+                chunk++;
+            }
+            doc = NO_MORE_DOCS;
+        }
+
+        // Last id of the 65536-id chunk holding target if the bitmap has ids there; otherwise the id
+        // just before the next non-empty chunk, or NO_MORE_DOCS when no chunk follows
+        public int chunkEnd(int target) {
+            int high = target >>> 16;
+            int next = seek(high);
+            if (next == keys.length) {
+                return NO_MORE_DOCS;
+            }
+            return keys[next] == high ? (high << 16) | 0xFFFF : (keys[next] << 16) - 1;
+        }
+
+        // Whether the bitmap has any ids in the chunk holding target
+        public boolean chunkPresent(int target) {
+            int next = seek(target >>> 16);
+            return next < keys.length && keys[next] == target >>> 16;
+        }
+
+        // First chunk index at or after the current one whose key is >= high
+        private int seek(int high) {
+            int low = chunk;
+            int top = keys.length;
+            while (low < top) {
+                int mid = (low + top) >>> 1;
+                if (keys[mid] < high) {
+                    low = mid + 1;
+                } else {
+                    top = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    // Accepts ids in ascending order; repeating the last id is a no-op
+    public static final class Builder {
+        private final Combiner chunks = new Combiner(4);
+        private char[] pending = new char[16];
+        private int pendingSize;
+        private int pendingKey = -1;
+        private int last = -1;
+
+        public Builder add(int id) {
+            if (id == last) {
+                return this;
+            }
+            if (id < 0 || id < last) {
+                throw new IllegalArgumentException("Ids must be non-negative and ascending: " + id);
+            }
+            last = id;
+            int key = id >>> 16;
+            if (key != pendingKey) {
+                flush();
+                pendingKey = key;
+            }
+            if (pendingSize == pending.length) {
+                pending = Arrays.copyOf(pending, pendingSize * 2);
+            }
+            pending[pendingSize++] = (char) id;
+            return this;
+        }
+
+        public RoaringBitmap build() {
+            flush();
+            return chunks.build();
+        }
+
+        private void flush() {
+            if (pendingSize > 0) {
+                chunks.add((char) pendingKey, ArrayContainer.of(Arrays.copyOf(pending, pendingSize)));
+                pendingSize = 0;
+            }
+        }
+    }
+
+    // Accumulates (key, container) pairs in key order, dropping empty containers
+    private static final class Combiner {
+        private char[] keys;
+        private Container[] containers;
+        private int size;
+        private int cardinality;
+
+        Combiner(int capacity) {
+            keys = new char[Math.max(1, capacity)];
+            containers = new Container[keys.length];
+        }
+
+        void add(char key, Container container) {
+            if (container.cardinality() == 0) {
+                return;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            keys[size] = key;
+            containers[size++] = container;
+            cardinality += container.cardinality();
+        }
+
+        RoaringBitmap build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            return new RoaringBitmap(Arrays.copyOf(keys, size), Arrays.copyOf(containers, size), cardinality);
+        }
+    }
+
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        // Write (high | value) for each value into ids starting at pos; returns the next free position
+        abstract int copyTo(int[] ids, int pos, int high);
+
+        // Smallest value >= from, or -1 if there is none
+        abstract int nextValue(int from);
+    }
+
+    private static final class ArrayContainer extends Container {
+        private final char[] values;
+
+        private ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        // Pick the cheaper representation for a sorted set of low bits
+        static Container of(char[] values) {
+            if (values.length <= ARRAY_LIMIT) {
+                return new ArrayContainer(values);
+            }
+            long[] words = new long[BITMAP_WORDS];
+            for (char value : values) {
+                words[value >>> 6] |= 1L << value;
+            }
+            return new BitmapContainer(words, values.length);
+        }
+
+        @Override
+        int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, value) >= 0;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] out = new char[Math.min(values.length, other.cardinality())];
+            int size = 0;
+            if (other instanceof ArrayContainer array) {
+                char[] b = array.values;
+                int i = 0;
+                int j = 0;
+                while (i < values.length && j < b.length) {
+                    if (values[i] < b[j]) {
+                        i++;
+                    } else if (values[i] > b[j]) {
+                        j++;
+                    } else {
+                        out[size++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (char value : values) {
+                    if (other.contains(value)) {
+                        out[size++] = value;
+                    }
+                }
+            }
+            return new ArrayContainer(Arrays.copyOf(out, size));
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            char[] b = ((ArrayContainer) other).values;
+            char[] out = new char[values.length + b.length];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < values.length || j < b.length) {
+                if (j == b.length || (i < values.length && values[i] < b[j])) {
+                    out[size++] = values[i++];
+                } else if (i == values.length || values[i] > b[j]) {
+                    out[size++] = b[j++];
+                } else {
+                    out[size++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return of(Arrays.copyOf(out, size));
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] out = new char[values.length];
+            int size = 0;
+            for (char value : values) {
+                if (!other.contains(value)) {
+                    out[size++] = value;
+                }
+            }
+            return new ArrayContainer(Arrays.copyOf(out, size));
+        }
+
+        @Override
+        int copyTo(int[] ids, int pos, int high) {
+            for (int i = 0; i < values.length && pos < ids.length; i++) {
+                ids[pos++] = high | values[i];
+            }
+            return pos;
+        }
+
+        @Override
+        int nextValue(int from) {
+            int index = Arrays.binarySearch(values, (char) from);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index < values.length ? values[index] : -1;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private final int cardinality;
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        // Wrap freshly computed words, shrinking back to an array when the result is sparse
+        static Container of(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_LIMIT) {
+                return new BitmapContainer(words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int size = 0;
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    values[size++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] b = ((BitmapContainer) other).words;
+            long[] out = new long[BITMAP_WORDS];
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                out[i] = words[i] & b[i];
+            }
+            return of(out);
+        }
+
+        @Override
+        Container or(Container other) {
+            long[] out = words.clone();
+            if (other instanceof ArrayContainer array) {
+                for (char value : array.values) {
+                    out[value >>> 6] |= 1L << value;
+                }
+            } else {
+                long[] b = ((BitmapContainer) other).words;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    out[i] |= b[i];
+                }
+            }
+            return of(out);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            long[] out = words.clone();
+            if (other instanceof ArrayContainer array) {
+                for (char value : array.values) {
+                    out[value >>> 6] &= ~(1L << value);
+                }
+            } else {
+                long[] b = ((BitmapContainer) other).words;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    out[i] &= ~b[i];
+                }
+            }
+            return of(out);
+        }
+
+        @Override
+        int copyTo(int[] ids, int pos, int high) {
+            for (int w = 0; w < BITMAP_WORDS && pos < ids.length; w++) {
+                long word = words[w];
+                while (word != 0 && pos < ids.length) {
+                    ids[pos++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return pos;
+        }
+
+        @Override
+        int nextValue(int from) {
+            int w = from >>> 6;
+            long word = words[w] & (-1L << from);
+            while (true) {
+                if (word != 0) {
+                    return (w << 6) | Long.numberOfTrailingZeros(word);
+                }
+                if (++w == BITMAP_WORDS) {
+                    return -1;
+                }
+                word = words[w];
+            }
+        }
+    }
+}
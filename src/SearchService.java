@@ -0,0 +1,166 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Answers searches from the local catalog, and asks Google Books when nothing matches locally.
+// Result pages of every search type are cached by normalized query in a W-TinyLFU cache, and
+// upstream pages are also kept in a persistent disk cache so they survive restarts. Upstream
+// pages past their freshness window are still served at once while a background request
+// refreshes them, and empty upstream answers are remembered briefly so that repeated misses
+// (typos, mostly) do not spend quota.
+// Identical upstream lookups that overlap in time share a single request, and every request
+// must get a permit from the rate limiter so we stay inside the Google Books quota.
+public final class SearchService {
+    // Tenant used for interactive searches from the console
+    public static final String CONSOLE_TENANT = "console";
+    // How long a search may queue for an upstream permit before failing, unless it says otherwise
+    private static final long MAX_PERMIT_WAIT_MILLIS = 500;
+    private static final long CACHE_MAX_BYTES = 32L << 20;
+    private static final int CACHE_EXPECTED_ENTRIES = 20_000;
+    // Upstream pages are fresh for FRESH_MILLIS, then served stale while being refreshed until
+    // STALE_MILLIS; empty pages are kept for NEGATIVE_MILLIS and never served stale
+    private static final long FRESH_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long STALE_MILLIS = TimeUnit.HOURS.toMillis(24);
+    private static final long NEGATIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Library library;
+    private final BooksApiClient upstream;
+    private final RateLimiter limiter;
+    private final DiskCache diskCache;
+    private final SingleFlight<QueryKey, List<Book>> upstreamCalls = new SingleFlight<>();
+    private final TinyLfuCache<QueryKey, CachedPage> cache =
+            new TinyLfuCache<>(CACHE_MAX_BYTES, CACHE_EXPECTED_ENTRIES,
+                    page -> 32 + Book.estimatedBytes(page.books()), CachedPage::usableUntil);
+
+    // upstream may be null to run fully offline, and diskCache null to keep results in memory only
+    public SearchService(Library library, BooksApiClient upstream, RateLimiter limiter, DiskCache diskCache) {
+        this.library = library;
+        this.upstream = upstream;
+        this.limiter = limiter;
+        this.diskCache = diskCache;
+    }
+
+    public Library library() {
+        return library;
+    }
+
+    public TinyLfuCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
+    public CompletableFuture<List<Book>> search(SearchType type, String query, int limit) {
+        return search(CONSOLE_TENANT, type, query, limit);
+    }
+
+    // Up to limit books; the future fails with IllegalArgumentException for malformed queries and
+    // with RateLimitedException when the tenant or the whole service is over its upstream rate
+    public CompletableFuture<List<Book>> search(String tenant, SearchType type, String query, int limit) {
+        return search(tenant, type, query, limit, MAX_PERMIT_WAIT_MILLIS);
+    }
+
+    // As search, queueing up to maxPermitWaitMillis for an upstream permit before failing, for
+    // callers that would rather wait than be turned away
+    public CompletableFuture<List<Book>> search(String tenant, SearchType type, String query, int limit,
+                                                long maxPermitWaitMillis) {
+        return page(tenant, type, query, 0, limit, maxPermitWaitMillis);
+    }
+
+    // Page through all results for the query, fetching ahead of the reader
+    public PageIterator pages(String tenant, SearchType type, String query, int pageSize) {
+        return new PageIterator((startIndex, count) -> page(tenant, type, query, startIndex, count), pageSize);
+    }
+
+    // Results startIndex .. startIndex + count; a query that matches anything locally is paged
+    // through the local catalog only, so one listing never mixes the two sources
+    public CompletableFuture<List<Book>> page(String tenant, SearchType type, String query, int startIndex, int count) {
+        return page(tenant, type, query, startIndex, count, MAX_PERMIT_WAIT_MILLIS);
+    }
+
+    private CompletableFuture<List<Book>> page(String tenant, SearchType type, String query, int startIndex, int count,
+                                               long maxPermitWaitMillis) {
+        QueryKey key = QueryKey.of(type, query, startIndex, count);
+        long now = System.currentTimeMillis();
+        CompletableFuture<List<Book>> cached = serveCached(tenant, key, cache.get(key), now);
+        if (cached != null) {
+            return cached;
+        }
+        List<Book> local;
+        try {
+            local = searchLocal(type, query, startIndex + count);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        // Boolean genre expressions have no Google Books equivalent
+        boolean localOnly = type == SearchType.GENRE && GenreIndex.isBoolean(query);
+        if (!local.isEmpty() || upstream == null || localOnly || query.isBlank()) {
+            List<Book> page = List.copyOf(local.subList(Math.min(startIndex, local.size()), local.size()));
+            cache.put(key, CachedPage.local(page, library.version()));
+            return CompletableFuture.completedFuture(page);
+        }
+        DiskCache.Entry stored = diskCache != null ? diskCache.get(key) : null;
+        if (stored != null) {
+            CachedPage page = CachedPage.upstream(stored.books(), stored.storedAtMillis(), library.version());
+            cached = serveCached(tenant, key, page, now);
+            if (cached != null) {
+                cache.put(key, page);
+                return cached;
+            }
+        }
+        return fetchUpstream(tenant, key, maxPermitWaitMillis);
+    }
+
+    // The cached books if the page is still usable, starting a refresh when it has gone stale
+    private CompletableFuture<List<Book>> serveCached(String tenant, QueryKey key, CachedPage page, long now) {
+        if (page == null || now >= page.usableUntil() || page.catalogVersion() != library.version()) {
+            return null;
+        }
+        if (now >= page.freshUntil() && upstream != null) {
+            // Refresh failures are ignored; the stale page stays until it is no longer usable
+            fetchUpstream(tenant, key, MAX_PERMIT_WAIT_MILLIS);
+        }
+        return CompletableFuture.completedFuture(page.books());
+    }
+
+    // Coalesced callers share the permit taken by whoever started the request, and the result
+    // is stored once per request rather than once per caller
+    private CompletableFuture<List<Book>> fetchUpstream(String tenant, QueryKey key, long maxPermitWaitMillis) {
+        return upstreamCalls.run(key, () -> limiter.acquire(tenant, maxPermitWaitMillis, TimeUnit.MILLISECONDS)
+                .thenCompose(permit -> upstream.search(key.type(), key.query(), key.startIndex(), key.count()))
+                .thenApply(books -> {
+                    cache.put(key, CachedPage.upstream(books, System.currentTimeMillis(), library.version()));
+                    if (diskCache != null) {
+                        diskCache.put(key, books);
+                    }
+                    return books;
+                }));
+    }
+
+    private List<Book> searchLocal(SearchType type, String query, int limit) {
+        switch (type) {
+            case GENRE:
+                return library.searchGenre(query, limit);
+            case AUTHOR:
+                return library.searchAuthor(query, limit);
+            default:
+                return library.searchTitle(query, limit);
+        }
+    }
+
+    // A cached result page with the times until which it is fresh and until which it may be
+    // served. Any page is dropped once books are added to the library: local results may change,
+    // and a query answered upstream may now match locally.
+    private record CachedPage(List<Book> books, long freshUntil, long usableUntil, long catalogVersion) {
+
+        // Local results only change with the catalog
+        static CachedPage local(List<Book> books, long catalogVersion) {
+            return new CachedPage(books, Long.MAX_VALUE, Long.MAX_VALUE, catalogVersion);
+        }
+
+        static CachedPage upstream(List<Book> books, long storedAt, long catalogVersion) {
+            if (books.isEmpty()) {
+                return new CachedPage(books, storedAt + NEGATIVE_MILLIS, storedAt + NEGATIVE_MILLIS, catalogVersion);
+            }
+            return new CachedPage(books, storedAt + FRESH_MILLIS, storedAt + STALE_MILLIS, catalogVersion);
+        }
+    }
+}
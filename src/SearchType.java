@@ -0,0 +1,27 @@
+// The three ways BookSage can search, with the matching Google Books query qualifier
+public enum SearchType {
+    GENRE("subject:"),
+    AUTHOR("inauthor:"),
+    TITLE("intitle:");
+
+    private final String qualifier;
+
+    SearchType(String qualifier) {
+        this.qualifier = qualifier;
+    }
+
+    // The type called name, such as "author" in any case, or null if there is none
+    public static SearchType named(String name) {
+        for (SearchType type : values()) {
+            if (type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    // Query string for the Google Books "q" parameter, e.g. inauthor:"Ursula K. Le Guin"
+    public String upstreamQuery(String query) {
+        return qualifier + "\"" + query.replace("\"", "") + "\"";
+    }
+}
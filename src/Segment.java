@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// One immutable slice of the catalog: a ColumnStore of books and the search indexes over them.
+// Segments are never changed after they are built; the library grows by adding segments and
+// shrinks its segment count by merging several into a new one. Results are in row numbers,
+// which the library turns into catalog ids by adding the segment's starting offset. A segment
+// written to a file carries its indexes with it, so opening one maps them rather than building.
+public final class Segment {
+    // Field weights for ranking: a title match counts for more than one in the description
+    private static final float TITLE_WEIGHT = 3.0f;
+    private static final float SUBTITLE_WEIGHT = 1.5f;
+    private static final float DESCRIPTION_WEIGHT = 1.0f;
+
+    private final ColumnStore catalog;
+    // Segment file the columns are mapped from, or null for a segment held only in memory
+    private final Path file;
+    // Title, subtitle and description, in the order of the weights
+    private final InvertedIndex[] textFields;
+    private final Bm25 textRanker;
+    private final GenreIndex genreIndex;
+    private final AuthorIndex authorIndex;
+    private final CompletionTrie titleCompletions;
+    private final CompletionTrie authorCompletions;
+    private final HnswIndex similarBooks;
+
+    private Segment(ColumnStore catalog, Path file, InvertedIndex[] textFields, GenreIndex genreIndex,
+                    AuthorIndex authorIndex, CompletionTrie titleCompletions, CompletionTrie authorCompletions,
+                    HnswIndex similarBooks) {
+        this.catalog = catalog;
+        this.file = file;
+        this.textFields = textFields;
+        this.textRanker = new Bm25(textFields, new float[]{TITLE_WEIGHT, SUBTITLE_WEIGHT, DESCRIPTION_WEIGHT});
+        this.genreIndex = genreIndex;
+        this.authorIndex = authorIndex;
+        this.titleCompletions = titleCompletions;
+        this.authorCompletions = authorCompletions;
+        this.similarBooks = similarBooks;
+    }
+
+    // Segment over the catalog with its indexes built in memory; file is where the catalog is
+    // mapped from, or null
+    public static Segment build(ColumnStore catalog, Path file) {
+        InvertedIndex.Builder titles = new InvertedIndex.Builder();
+        InvertedIndex.Builder subtitles = new InvertedIndex.Builder();
+        InvertedIndex.Builder descriptions = new InvertedIndex.Builder();
+        GenreIndex.Builder genres = new GenreIndex.Builder();
+        AuthorIndex.Builder authors = new AuthorIndex.Builder();
+        CompletionTrie.Builder titleKeys = new CompletionTrie.Builder();
+        CompletionTrie.Builder authorKeys = new CompletionTrie.Builder();
+        for (int row = 0; row < catalog.rows(); row++) {
+            String title = catalog.title(row);
+            List<String> bookAuthors = catalog.authors(row);
+            titles.add(row, title);
+            subtitles.add(row, catalog.subtitle(row));
+            descriptions.add(row, catalog.description(row));
+            genres.add(row, catalog.categories(row));
+            authors.add(row, bookAuthors);
+            titleKeys.add(title, 1);
+            // Authors with more books in the catalog rank higher
+            for (String author : bookAuthors) {
+                authorKeys.add(author, 1);
+            }
+        }
+
+        // The graph takes longest to build of all the indexes, and takes inserts from every core
+        HnswIndex.Builder similar = new HnswIndex.Builder(BookEmbedding.DIMENSIONS, catalog.rows());
+        IntStream.range(0, catalog.rows()).parallel().forEach(row -> similar.insert(row,
+                BookEmbedding.of(catalog.description(row), catalog.categories(row), catalog.authors(row))));
+        return new Segment(catalog, file,
+                new InvertedIndex[]{titles.build(), subtitles.build(), descriptions.build()},
+                genres.build(), authors.build(), titleKeys.build(), authorKeys.build(), similar.build());
+    }
+
+    // Map a segment file written by write(). Its indexes are used from the mapping as stored;
+    // they are only built, as by build(), for a file written before indexes were stored.
+    public static Segment open(Path file) throws IOException {
+        ColumnStore catalog = ColumnStore.map(file);
+        if (catalog.indexes() == null) {
+            return build(catalog, file);
+        }
+        try {
+            IndexFile.Reader in = new IndexFile.Reader(catalog.indexes());
+            InvertedIndex[] textFields = {InvertedIndex.read(in), InvertedIndex.read(in), InvertedIndex.read(in)};
+            GenreIndex genreIndex = GenreIndex.read(in);
+            AuthorIndex authorIndex = AuthorIndex.read(in);
+            CompletionTrie titleCompletions = CompletionTrie.read(in);
+            CompletionTrie authorCompletions = CompletionTrie.read(in);
+            HnswIndex similarBooks = HnswIndex.read(in);
+            if (similarBooks.capacity() != catalog.rows()) {
+                throw new IOException("Segment indexes are for a different number of books");
+            }
+            return new Segment(catalog, file, textFields, genreIndex, authorIndex, titleCompletions,
+                    authorCompletions, similarBooks);
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException(file + " has truncated or corrupt indexes", e);
+        }
+    }
+
+    // Write the catalog and the indexes to a segment file, for open() to map
+    public void write(Path file) throws IOException {
+        catalog.write(file, out -> {
+            for (InvertedIndex field : textFields) {
+                field.write(out);
+            }
+            genreIndex.write(out);
+            authorIndex.write(out);
+            titleCompletions.write(out);
+            authorCompletions.write(out);
+            similarBooks.write(out);
+        });
+    }
+
+    public ColumnStore catalog() {
+        return catalog;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public int rows() {
+        return catalog.rows();
+    }
+
+    public Bm25.Stats titleStats(String query) {
+        return textRanker.stats(query);
+    }
+
+    // Best BM25 matches across title, subtitle and description, with idf from stats so that
+    // scores are comparable between segments
+    public List<TopK.Hit> searchTitle(String query, int limit, Bm25.Stats stats) {
+        return textRanker.search(query, limit, stats);
+    }
+
+    // Rows matching a boolean genre query, ascending
+    public int[] filterGenre(String query, int limit) {
+        return genreIndex.search(query).toArray(limit);
+    }
+
+    public Bm25.Stats genreStats(String query) {
+        return genreIndex.stats(query);
+    }
+
+    public List<TopK.Hit> rankGenre(String query, int limit, Bm25.Stats stats) {
+        return genreIndex.rank(query, limit, stats);
+    }
+
+    // Authors close to the query, by name, with their distance and book count in this segment
+    public List<AuthorIndex.Match> matchAuthor(String query, int limit) {
+        return authorIndex.matches(query, limit);
+    }
+
+    // The author's normalized name, the same in every segment that has the author
+    public String authorKey(int author) {
+        return authorIndex.key(author);
+    }
+
+    // The author with this key in this segment, or -1
+    public int findAuthor(String key) {
+        return authorIndex.find(key);
+    }
+
+    // Rows of the author's first limit books, whatever spelling of the name each one carries
+    public int[] authorBooks(int author, int limit) {
+        return authorIndex.books(author, limit);
+    }
+
+    // Rows whose embeddings are closest to the vector, scored by cosine similarity
+    public List<TopK.Hit> similar(float[] vector, int limit) {
+        return similarBooks.search(vector, limit);
+    }
+
+    // Titles weighted by how many books carry them
+    public CompletionTrie titleCompletions() {
+        return titleCompletions;
+    }
+
+    // Author names weighted by how many books they have
+    public CompletionTrie authorCompletions() {
+        return authorCompletions;
+    }
+
+    public List<String> genres() {
+        return genreIndex.genres();
+    }
+}
@@ -0,0 +1,39 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Collapses concurrent calls for the same key into one: while a call is in flight, later
+// callers for that key attach to its future instead of starting their own. The entry is
+// dropped as soon as the call completes, so results are never served stale from here.
+public final class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    // Start call for key unless one is already running; every caller gets its own view of the
+    // shared result, so cancelling one caller's future does not cancel the others
+    public CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing.copy();
+        }
+        try {
+            call.get().whenComplete((value, error) -> {
+                inFlight.remove(key, created);
+                if (error != null) {
+                    created.completeExceptionally(error);
+                } else {
+                    created.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created.copy();
+    }
+
+    // Number of distinct keys currently being fetched
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
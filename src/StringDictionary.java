@@ -0,0 +1,48 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Interns strings as dense int ids so that a value repeated across many books, such as an
+// author or a genre, is stored once. Ids are never reused or removed; lookups by id are a
+// plain array read.
+public final class StringDictionary {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[64];
+    // Guarded by this
+    private int size;
+
+    // The id of value, assigning the next free one the first time it is seen
+    public int id(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            String[] current = values;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = value;
+            values = current;
+            ids.put(value, size);
+            return size++;
+        }
+    }
+
+    // The id of value, or -1 if it has never been seen
+    public int find(String value) {
+        Integer id = ids.get(value);
+        return id != null ? id : -1;
+    }
+
+    public String value(int id) {
+        return values[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
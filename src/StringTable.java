@@ -0,0 +1,90 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+// A list of strings as one UTF-8 byte buffer and an offsets buffer: string i is
+// utf8[starts[i] .. starts[i + 1]). It takes the same form on the heap and in a mapped segment
+// file, and a string is only decoded when asked for. A table whose strings are in unsigned byte
+// order, which is code point order, can be binary searched with find() without decoding any.
+public final class StringTable {
+    private final IntBuffer starts;
+    private final ByteBuffer utf8;
+
+    StringTable(IntBuffer starts, ByteBuffer utf8) {
+        this.starts = starts;
+        this.utf8 = utf8;
+    }
+
+    // The strings in the order given
+    public static StringTable of(String[] strings) {
+        byte[][] encoded = new byte[strings.length][];
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return of(encoded);
+    }
+
+    static StringTable of(byte[][] encoded) {
+        int[] starts = new int[encoded.length + 1];
+        for (int i = 0; i < encoded.length; i++) {
+            starts[i + 1] = Math.addExact(starts[i], encoded[i].length);
+        }
+        byte[] utf8 = new byte[starts[encoded.length]];
+        for (int i = 0; i < encoded.length; i++) {
+            System.arraycopy(encoded[i], 0, utf8, starts[i], encoded[i].length);
+        }
+        return new StringTable(IntBuffer.wrap(starts), ByteBuffer.wrap(utf8));
+    }
+
+    public int size() {
+        return starts.limit() - 1;
+    }
+
+    public String get(int i) {
+        int start = starts.get(i);
+        byte[] bytes = new byte[starts.get(i + 1) - start];
+        utf8.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Index of the string in a sorted table, or -1
+    public int find(String value) {
+        byte[] key = value.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int order = compare(mid, key);
+            if (order < 0) {
+                low = mid + 1;
+            } else if (order > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // String i against key, both as unsigned bytes
+    int compare(int i, byte[] key) {
+        int start = starts.get(i);
+        int length = starts.get(i + 1) - start;
+        int common = Math.min(length, key.length);
+        for (int j = 0; j < common; j++) {
+            int order = Integer.compare(utf8.get(start + j) & 0xFF, key[j] & 0xFF);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    IntBuffer starts() {
+        return starts;
+    }
+
+    ByteBuffer utf8() {
+        return utf8;
+    }
+}
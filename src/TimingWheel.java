@@ -0,0 +1,123 @@
+import java.util.function.Consumer;
+
+// Hierarchical timing wheel for expiring entries by deadline in O(1) each.
+// Four levels of 64 buckets cover roughly 1 s, 65 s, 70 min and 3 days per bucket; an entry is
+// filed by how far away its deadline is, and when the wheel turns past a bucket its entries are
+// either expired or cascaded into a finer level. Advancing only visits the buckets whose time
+// has passed, so there is no sweep over all entries and no timer object per entry: timers are
+// linked into their bucket intrusively. Not thread-safe; callers advance it under their own lock.
+public final class TimingWheel {
+    private static final int BUCKETS = 64;
+    // Bucket widths as powers of two of a millisecond
+    private static final int[] SHIFTS = {10, 16, 22, 28};
+
+    // Something with a deadline that can sit in one bucket of the wheel
+    public abstract static class Timer {
+        // Volatile so that owners can check a deadline without holding the lock that guards the wheel
+        volatile long expiresAt;
+        Timer previousTimer;
+        Timer nextTimer;
+
+        public long expiresAt() {
+            return expiresAt;
+        }
+    }
+
+    // Circular lists per bucket, each headed by a sentinel
+    private final Timer[][] levels = new Timer[SHIFTS.length][BUCKETS];
+    private long time;
+
+    public TimingWheel(long now) {
+        this.time = now;
+        for (Timer[] buckets : levels) {
+            for (int i = 0; i < BUCKETS; i++) {
+                Timer sentinel = new Timer() { };
+                sentinel.previousTimer = sentinel;
+                sentinel.nextTimer = sentinel;
+                buckets[i] = sentinel;
+            }
+        }
+    }
+
+    // File timer under its deadline, moving it if it is already scheduled
+    public void schedule(Timer timer, long expiresAt) {
+        if (timer.nextTimer != null) {
+            unlink(timer);
+        }
+        timer.expiresAt = expiresAt;
+        link(timer);
+    }
+
+    public void cancel(Timer timer) {
+        if (timer.nextTimer != null) {
+            unlink(timer);
+        }
+    }
+
+    // Turn the wheel to now, handing every timer whose deadline has passed to expire
+    public void advance(long now, Consumer<Timer> expire) {
+        long previous = time;
+        if (now <= previous) {
+            return;
+        }
+        time = now;
+        for (int level = 0; level < SHIFTS.length; level++) {
+            long previousTicks = previous >>> SHIFTS[level];
+            long ticks = now >>> SHIFTS[level];
+            if (ticks == previousTicks) {
+                break;
+            }
+            long delta = ticks - previousTicks;
+            int start = delta >= BUCKETS ? 0 : (int) (previousTicks & (BUCKETS - 1));
+            int count = delta >= BUCKETS ? BUCKETS : (int) delta + 1;
+            for (int i = 0; i < count; i++) {
+                drain(levels[level][(start + i) & (BUCKETS - 1)], now, expire);
+            }
+        }
+    }
+
+    // Expire or re-file everything in one bucket; the list is detached first so that timers
+    // re-filed into this same bucket are not visited twice
+    private void drain(Timer sentinel, long now, Consumer<Timer> expire) {
+        Timer timer = sentinel.nextTimer;
+        sentinel.previousTimer = sentinel;
+        sentinel.nextTimer = sentinel;
+        while (timer != sentinel) {
+            Timer next = timer.nextTimer;
+            timer.previousTimer = null;
+            timer.nextTimer = null;
+            if (timer.expiresAt <= now) {
+                expire.accept(timer);
+            } else {
+                link(timer);
+            }
+            timer = next;
+        }
+    }
+
+    private void link(Timer timer) {
+        Timer sentinel = bucket(timer.expiresAt);
+        timer.previousTimer = sentinel.previousTimer;
+        timer.nextTimer = sentinel;
+        sentinel.previousTimer.nextTimer = timer;
+        sentinel.previousTimer = timer;
+    }
+
+    private static void unlink(Timer timer) {
+        timer.previousTimer.nextTimer = timer.nextTimer;
+        timer.nextTimer.previousTimer = timer.previousTimer;
+        timer.previousTimer = null;
+        timer.nextTimer = null;
+    }
+
+    // The finest level whose span still reaches the deadline; later deadlines go in the last level
+    // and are looked at again, and re-filed, each time the wheel passes their bucket
+    private Timer bucket(long expiresAt) {
+        long duration = expiresAt - time;
+        int level = 0;
+        while (level < SHIFTS.length - 1 && duration >= (long) BUCKETS << SHIFTS[level]) {
+            level++;
+        }
+        return levels[level][(int) ((expiresAt >>> SHIFTS[level]) & (BUCKETS - 1))];
+    }
+}
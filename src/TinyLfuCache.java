@@ -0,0 +1,386 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+// Bounded concurrent cache with W-TinyLFU eviction, sized by the estimated bytes of its values.
+// New entries land in a small LRU window (1% of the budget); entries leaving the window must beat
+// the main space's eviction victim on estimated access frequency to be admitted, so a burst of
+// one-off queries cannot flush the popular ones. The main space is a segmented LRU: entries read
+// again are promoted from probation to the protected segment (80% of the main space).
+// Reads are lock-free: a hash lookup plus a slot write into a lossy ring buffer of accesses that
+// is replayed against the eviction policy under the lock, in batches.
+// Entries may carry a deadline; they are filed in a timing wheel that is turned whenever the
+// policy runs, so expiring them takes no scans and no timers, and reads never return them late.
+public final class TinyLfuCache<K, V> {
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int DRAIN_THRESHOLD = 32;
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ToIntFunction<V> weigher;
+    private final ToLongFunction<V> expiry;
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    // Guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedSpace = new AccessOrder<>();
+    private final FrequencySketch sketch;
+    private final TimingWheel wheel = new TimingWheel(System.currentTimeMillis());
+    private long windowWeight;
+    private long protectedWeight;
+    private long totalWeight;
+
+    private final AtomicReferenceArray<Node<K, V>> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong reads = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    // maximumWeight is in the weigher's units (bytes); expectedEntries sizes the frequency sketch
+    public TinyLfuCache(long maximumWeight, int expectedEntries, ToIntFunction<V> weigher) {
+        this(maximumWeight, expectedEntries, weigher, value -> Long.MAX_VALUE);
+    }
+
+    // expiry gives the wall-clock millisecond at which a value expires, or Long.MAX_VALUE for never
+    public TinyLfuCache(long maximumWeight, int expectedEntries, ToIntFunction<V> weigher, ToLongFunction<V> expiry) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive");
+        }
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max(1, maximumWeight / 100);
+        this.protectedMaximum = (maximumWeight - windowMaximum) * 8 / 10;
+        this.weigher = weigher;
+        this.expiry = expiry;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    // The cached value, or null; never blocks
+    public V get(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null || node.expiresAt() <= System.currentTimeMillis()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        recordRead(node);
+        return node.value;
+    }
+
+    // Values heavier than the whole cache, or already expired, are not stored
+    public void put(K key, V value) {
+        int weight = weigher.applyAsInt(value);
+        long expiresAt = expiry.applyAsLong(value);
+        long now = System.currentTimeMillis();
+        if (weight > maximumWeight || expiresAt <= now) {
+            invalidate(key);
+            return;
+        }
+        lock.lock();
+        try {
+            drainReads();
+            wheel.advance(now, this::expire);
+            sketch.increment(key);
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                node.value = value;
+                setWeight(node, weight);
+                onAccess(node);
+            } else {
+                node = new Node<>(key, value, weight);
+                data.put(key, node);
+                window.addLast(node);
+                windowWeight += weight;
+                totalWeight += weight;
+            }
+            if (expiresAt == Long.MAX_VALUE) {
+                wheel.cancel(node);
+                node.expiresAt = Long.MAX_VALUE;
+            } else {
+                wheel.schedule(node, expiresAt);
+            }
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            Node<K, V> node = data.remove(key);
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), data.size(), totalWeight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordRead(Node<K, V> node) {
+        long index = reads.getAndIncrement();
+        readBuffer.lazySet((int) (index & (READ_BUFFER_SIZE - 1)), node);
+        if ((index & (DRAIN_THRESHOLD - 1)) == 0 && lock.tryLock()) {
+            try {
+                drainReads();
+                wheel.advance(System.currentTimeMillis(), this::expire);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Replay buffered reads; slots overwritten before being drained are simply lost
+    private void drainReads() {
+        for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            Node<K, V> node = readBuffer.getAndSet(i, null);
+            if (node != null && node.queue >= 0) {
+                sketch.increment(node.key);
+                onAccess(node);
+            }
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                protectedSpace.addLast(node);
+                node.queue = PROTECTED;
+                protectedWeight += node.weight;
+                demoteProtected();
+                break;
+            default:
+                protectedSpace.moveToLast(node);
+        }
+    }
+
+    private void setWeight(Node<K, V> node, int weight) {
+        int delta = weight - node.weight;
+        node.weight = weight;
+        totalWeight += delta;
+        if (node.queue == WINDOW) {
+            windowWeight += delta;
+        } else if (node.queue == PROTECTED) {
+            protectedWeight += delta;
+        }
+    }
+
+    private void demoteProtected() {
+        while (protectedWeight > protectedMaximum && protectedSpace.head != null) {
+            Node<K, V> node = protectedSpace.head;
+            protectedSpace.remove(node);
+            protectedWeight -= node.weight;
+            probation.addLast(node);
+            node.queue = PROBATION;
+        }
+    }
+
+    private void evict() {
+        // Entries leaving the window become admission candidates at the tail of probation
+        while (windowWeight > windowMaximum && window.head != window.tail) {
+            Node<K, V> node = window.head;
+            window.remove(node);
+            windowWeight -= node.weight;
+            probation.addLast(node);
+            node.queue = PROBATION;
+        }
+        while (totalWeight > maximumWeight) {
+            Node<K, V> victim = probation.head;
+            Node<K, V> candidate = probation.tail;
+            Node<K, V> evicted;
+            if (victim == null) {
+                evicted = protectedSpace.head != null ? protectedSpace.head : window.head;
+            } else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evicted = victim;
+            } else {
+                evicted = candidate;
+            }
+            data.remove(evicted.key, evicted);
+            unlink(evicted);
+            evictions.increment();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expire(TimingWheel.Timer timer) {
+        Node<K, V> node = (Node<K, V>) timer;
+        data.remove(node.key, node);
+        unlink(node);
+        expirations.increment();
+    }
+
+    private void unlink(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            default:
+                protectedSpace.remove(node);
+                protectedWeight -= node.weight;
+        }
+        totalWeight -= node.weight;
+        wheel.cancel(node);
+        node.queue = -1;
+    }
+
+    public record Stats(long hits, long misses, long evictions, long expirations, int entries, long weightedSize) {
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    private static final class Node<K, V> extends TimingWheel.Timer {
+        final K key;
+        volatile V value;
+        // Guarded by the cache lock; queue is -1 once the node has left the cache
+        int weight;
+        byte queue = WINDOW;
+        Node<K, V> previous;
+        Node<K, V> next;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = Long.MAX_VALUE;
+        }
+    }
+
+    // Intrusive doubly linked list from least to most recently used
+    private static final class AccessOrder<K, V> {
+        Node<K, V> head;
+        Node<K, V> tail;
+
+        void addLast(Node<K, V> node) {
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    // Count-min sketch of 4-bit counters, sixteen to a long, that halves every counter after
+    // ten samples per slot so that old popularity fades
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int sampleSize;
+        private int samples;
+
+        FrequencySketch(int expectedEntries) {
+            int length = Integer.highestOneBit(Math.max(16, expectedEntries - 1)) << 1;
+            this.table = new long[length];
+            this.sampleSize = 10 * length;
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = 15;
+            for (int i = 0; i < 4; i++) {
+                frequency = Math.min(frequency, (int) ((table[index(hash, i)] >>> offset(hash, i)) & 15));
+            }
+            return frequency;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = index(hash, i);
+                int offset = offset(hash, i);
+                if (((table[index] >>> offset) & 15) != 15) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++samples == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                samples /= 2;
+            }
+        }
+
+        private int index(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            h += h >>> 32;
+            return (int) h & (table.length - 1);
+        }
+
+        // Each row owns four of the sixteen counters in a long
+        private static int offset(int hash, int row) {
+            return ((row << 2) + ((hash >>> (row << 3)) & 3)) << 2;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 17;
+            h *= 0xed5ad4bb;
+            h ^= h >>> 11;
+            h *= 0xac4c1b51;
+            return h ^ (h >>> 15);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Turns free text into normalized search tokens
+public final class Tokenizer {
+    // Combining marks left over after Unicode decomposition (accents, umlauts, ...)
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    // Letters that do not decompose into a base letter plus accent, with their usual transliteration
+    private static final String[][] FOLDS = {
+            {"\u00df", "ss"}, {"\u00e6", "ae"}, {"\u0153", "oe"}, {"\u00f8", "o"},
+            {"\u0142", "l"}, {"\u0111", "d"}, {"\u00fe", "th"}, {"\u00f0", "d"},
+    };
+
+    private Tokenizer() {
+    }
+
+    // Lowercase and strip accents so accented and plain spellings compare equal
+    public static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String folded = MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+        for (String[] fold : FOLDS) {
+            if (folded.contains(fold[0])) {
+                folded = folded.replace(fold[0], fold[1]);
+            }
+        }
+        return folded;
+    }
+
+    // Split text into normalized alphanumeric tokens
+    public static List<String> tokenize(String text) {
+        String normalized = normalize(text);
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < normalized.length(); i++) {
+            if (Character.isLetterOrDigit(normalized.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(normalized.substring(start));
+        }
+        return tokens;
+    }
+}
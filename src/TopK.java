@@ -0,0 +1,93 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps the k best-scoring documents seen so far in a fixed-size min-heap, so ranking
+// costs O(n log k) and never sorts or stores the full candidate set.
+public final class TopK {
+    private final int[] docs;
+    private final float[] scores;
+    private int size;
+
+    public TopK(int k) {
+        docs = new int[Math.max(0, k)];
+        scores = new float[docs.length];
+    }
+
+    // Score a document must beat to enter the heap once it is full
+    public float threshold() {
+        return size < docs.length ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public boolean isFull() {
+        return size == docs.length;
+    }
+
+    public void offer(int doc, float score) {
+        if (size < docs.length) {
+            docs[size] = doc;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (docs.length > 0 && beats(score, doc, scores[0], docs[0])) {
+            docs[0] = doc;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    // Best document first; ties go to the lower id. Only the k retained hits are sorted.
+    public List<Hit> results() {
+        List<Hit> hits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hits.add(new Hit(docs[i], scores[i]));
+        }
+        hits.sort((a, b) -> beats(a.score(), a.doc(), b.score(), b.doc()) ? -1 : 1);
+        return hits;
+    }
+
+    // Higher score wins; on equal scores the lower doc id ranks higher
+    private static boolean beats(float score, int doc, float otherScore, int otherDoc) {
+        return score > otherScore || (score == otherScore && doc < otherDoc);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!beats(scores[parent], docs[parent], scores[i], docs[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < size && beats(scores[worst], docs[worst], scores[right], docs[right])) {
+                worst = right;
+            }
+            if (!beats(scores[i], docs[i], scores[worst], docs[worst])) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int doc = docs[a];
+        docs[a] = docs[b];
+        docs[b] = doc;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+
+    public record Hit(int doc, float score) {
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Receives a volumes response body without ever blocking a thread. Each chunk is inflated as it
+// arrives, on whichever HttpClient thread delivers it, into one growing array; when the last
+// chunk is in, the array is parsed with VolumeParser. The fields mask keeps a page to a few
+// kilobytes, so holding it whole is cheap, and nothing waits on the network for the rest of it.
+// gzip is decoded here rather than with GZIPInputStream, which can only pull from a stream.
+final class VolumeBodySubscriber implements HttpResponse.BodySubscriber<List<Book>> {
+    // A larger body, compressed or not, is refused rather than inflated without limit
+    private static final int MAX_BODY = 8 << 20;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int TRAILER = 8;
+
+    private final CompletableFuture<List<Book>> result = new CompletableFuture<>();
+    private final Inflater inflater;
+    private final CRC32 crc = new CRC32();
+    private Flow.Subscription subscription;
+    // Decoded body so far
+    private byte[] body = new byte[8192];
+    private int size;
+    // Compressed bytes held back until the whole gzip header, or the whole trailer, has arrived
+    private byte[] held = new byte[0];
+    private boolean inHeader;
+
+    // gzip says whether the response came with Content-Encoding: gzip
+    VolumeBodySubscriber(boolean gzip) {
+        this.inflater = gzip ? new Inflater(true) : null;
+        this.inHeader = gzip;
+    }
+
+    @Override
+    public CompletionStage<List<Book>> getBody() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> chunks) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            for (ByteBuffer chunk : chunks) {
+                if (inflater == null) {
+                    append(chunk);
+                } else {
+                    inflate(chunk);
+                }
+            }
+        } catch (IOException | DataFormatException e) {
+            subscription.cancel();
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        fail(error);
+    }
+
+    @Override
+    public void onComplete() {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            if (inflater != null) {
+                checkTrailer();
+                inflater.end();
+            }
+            try (Reader reader = new InputStreamReader(new ByteArrayInputStream(body, 0, size), StandardCharsets.UTF_8)) {
+                result.complete(VolumeParser.parse(reader));
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void append(ByteBuffer chunk) throws IOException {
+        int n = chunk.remaining();
+        ensureRoom(n);
+        chunk.get(body, size, n);
+        size += n;
+    }
+
+    private void inflate(ByteBuffer chunk) throws IOException, DataFormatException {
+        if (inHeader || inflater.finished()) {
+            hold(chunk);
+            if (inflater.finished()) {
+                return;
+            }
+            int headerLength = headerLength(held);
+            if (headerLength < 0) {
+                return;
+            }
+            inHeader = false;
+            chunk = ByteBuffer.wrap(held, headerLength, held.length - headerLength);
+            held = new byte[0];
+        }
+        inflater.setInput(chunk);
+        while (!inflater.finished() && !inflater.needsInput()) {
+            if (inflater.needsDictionary()) {
+                throw new IOException("Compressed body needs a preset dictionary");
+            }
+            ensureRoom(1);
+            int n = inflater.inflate(body, size, body.length - size);
+            crc.update(body, size, n);
+            size += n;
+        }
+        // Whatever follows the deflate stream is the trailer
+        if (inflater.finished() && chunk.hasRemaining()) {
+            hold(chunk);
+        }
+    }
+
+    private void hold(ByteBuffer chunk) {
+        int n = chunk.remaining();
+        held = Arrays.copyOf(held, held.length + n);
+        chunk.get(held, held.length - n, n);
+    }
+
+    // Bytes taken by the gzip member header at the start of bytes, or -1 if it is not all there yet
+    private static int headerLength(byte[] bytes) throws IOException {
+        if (bytes.length < 10) {
+            return -1;
+        }
+        if ((bytes[0] & 0xff | (bytes[1] & 0xff) << 8) != GZIP_MAGIC || bytes[2] != 8) {
+            throw new IOException("Body is not gzip-compressed");
+        }
+        int flags = bytes[3] & 0xff;
+        int at = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (bytes.length < at + 2) {
+                return -1;
+            }
+            at += 2 + (bytes[at] & 0xff | (bytes[at + 1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            at = skipZeroTerminated(bytes, at);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            at = skipZeroTerminated(bytes, at);
+        }
+        if ((flags & FHCRC) != 0 && at >= 0) {
+            at += 2;
+        }
+        return at >= 0 && at <= bytes.length ? at : -1;
+    }
+
+    private static int skipZeroTerminated(byte[] bytes, int at) {
+        if (at < 0) {
+            return -1;
+        }
+        for (int i = at; i < bytes.length; i++) {
+            if (bytes[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    // The trailer holds the CRC-32 and length of the inflated body; a mismatch means a torn body
+    private void checkTrailer() throws IOException {
+        if (!inflater.finished() || held.length < TRAILER) {
+            throw new IOException("Compressed body ended early");
+        }
+        ByteBuffer trailer = ByteBuffer.wrap(held).order(ByteOrder.LITTLE_ENDIAN);
+        if ((trailer.getInt(0) & 0xffffffffL) != crc.getValue() || trailer.getInt(4) != size) {
+            throw new IOException("Compressed body is corrupt");
+        }
+    }
+
+    private void ensureRoom(int n) throws IOException {
+        if (size + n > MAX_BODY) {
+            throw new IOException("Response body is over " + (MAX_BODY >> 20) + " MiB");
+        }
+        if (size + n > body.length) {
+            body = Arrays.copyOf(body, Math.min(MAX_BODY, Math.max(size + n, body.length * 2)));
+        }
+    }
+
+    private void fail(Throwable error) {
+        if (inflater != null) {
+            inflater.end();
+        }
+        result.completeExceptionally(error);
+    }
+}
@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads a Google Books volumes response straight into Book records with a streaming parser.
+// Only the fields BookSage shows are decoded; everything else, including long descriptions,
+// is skipped without being materialized.
+public final class VolumeParser {
+    // Partial-response mask asking Google Books for exactly the fields read below; keep in sync
+    public static final String FIELDS =
+            "items(volumeInfo(title,subtitle,authors,categories,publisher,industryIdentifiers,averageRating,ratingsCount))";
+
+    private static final String[] ROOT_FIELDS = {"items"};
+    private static final int ITEMS = 0;
+
+    private static final String[] ITEM_FIELDS = {"volumeInfo"};
+    private static final int VOLUME_INFO = 0;
+
+    private static final String[] VOLUME_FIELDS = {
+            "title", "subtitle", "authors", "categories", "publisher", "industryIdentifiers", "averageRating",
+            "ratingsCount"};
+    private static final int TITLE = 0;
+    private static final int SUBTITLE = 1;
+    private static final int AUTHORS = 2;
+    private static final int CATEGORIES = 3;
+    private static final int PUBLISHER = 4;
+    private static final int IDENTIFIERS = 5;
+    private static final int AVERAGE_RATING = 6;
+    private static final int RATINGS_COUNT = 7;
+
+    private static final String[] IDENTIFIER_FIELDS = {"type", "identifier"};
+    private static final int TYPE = 0;
+    private static final int IDENTIFIER = 1;
+
+    private VolumeParser() {
+    }
+
+    // Books from one response page; they are not in the catalog and carry Book.NO_ID
+    public static List<Book> parse(Reader body) throws IOException {
+        JsonReader json = new JsonReader(body);
+        List<Book> books = new ArrayList<>();
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName(ROOT_FIELDS) == ITEMS && json.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    Book book = readItem(json, Book.NO_ID);
+                    if (book != null) {
+                        books.add(book);
+                    }
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return books;
+    }
+
+    private static Book readItem(JsonReader json, int id) throws IOException {
+        Book book = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName(ITEM_FIELDS) == VOLUME_INFO && json.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                book = readVolumeInfo(json, id);
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return book;
+    }
+
+    private static Book readVolumeInfo(JsonReader json, int id) throws IOException {
+        String title = "";
+        String subtitle = "";
+        List<String> authors = List.of();
+        List<String> categories = List.of();
+        String publisher = "";
+        long isbn13 = 0;
+        float averageRating = 0;
+        int ratingsCount = 0;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            int field = json.nextName(VOLUME_FIELDS);
+            if (json.peek() == JsonReader.Token.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (field) {
+                case TITLE:
+                    title = json.nextString();
+                    break;
+                case SUBTITLE:
+                    subtitle = json.nextString();
+                    break;
+                case AUTHORS:
+                    authors = readStrings(json);
+                    break;
+                case CATEGORIES:
+                    categories = readStrings(json);
+                    break;
+                case PUBLISHER:
+                    publisher = json.nextString();
+                    break;
+                case IDENTIFIERS:
+                    isbn13 = Book.parseIsbn(readIsbn13(json));
+                    break;
+                case AVERAGE_RATING:
+                    averageRating = (float) json.nextDouble();
+                    break;
+                case RATINGS_COUNT:
+                    ratingsCount = json.nextInt();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return new Book(id, title, subtitle, authors, categories, publisher, "", isbn13, averageRating, ratingsCount);
+    }
+
+    private static List<String> readStrings(JsonReader json) throws IOException {
+        if (json.peek() != JsonReader.Token.BEGIN_ARRAY) {
+            json.skipValue();
+            return List.of();
+        }
+        List<String> values = new ArrayList<>(2);
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() == JsonReader.Token.STRING) {
+                values.add(json.nextString());
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endArray();
+        return values;
+    }
+
+    // The ISBN_13 entry of industryIdentifiers, or "" when the volume has none
+    private static String readIsbn13(JsonReader json) throws IOException {
+        if (json.peek() != JsonReader.Token.BEGIN_ARRAY) {
+            json.skipValue();
+            return "";
+        }
+        String isbn = "";
+        json.beginArray();
+        while (json.hasNext()) {
+            boolean isIsbn13 = false;
+            String identifier = null;
+            json.beginObject();
+            while (json.hasNext()) {
+                int field = json.nextName(IDENTIFIER_FIELDS);
+                if (field == TYPE) {
+                    isIsbn13 = "ISBN_13".equals(json.nextString());
+                } else if (field == IDENTIFIER) {
+                    identifier = json.nextString();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+            if (isIsbn13 && identifier != null) {
+                isbn = identifier;
+            }
+        }
+        json.endArray();
+        return isbn;
+    }
+}
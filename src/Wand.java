@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Top-k disjunctive retrieval with block-max WAND pruning.
+// Every scorer knows an upper bound on its contribution, both for its whole posting list and
+// for the block around a given doc. Scorers are kept sorted by current doc; the pivot is the
+// first doc where the summed upper bounds could beat the k-th best score so far, and everything
+// before it is skipped. If the block-level bounds at the pivot still cannot beat it, the whole
+// block range is skipped too. Broad queries therefore score only a small fraction of their postings.
+public final class Wand {
+    static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    private Wand() {
+    }
+
+    // One query clause walking a sorted doc-id list
+    public interface Scorer {
+        int doc();
+
+        void next();
+
+        // Move to the first doc >= target
+        void advance(int target);
+
+        // Upper bound on score() over the whole list
+        float maxScore();
+
+        // Select the block that may hold target and return its last doc id (NO_MORE_DOCS past the end)
+        int shallowAdvance(int target);
+
+        // Upper bound on score() within the block selected by shallowAdvance
+        float blockMaxScore();
+
+        // Score of the current doc
+        float score();
+    }
+
+    public static List<TopK.Hit> search(List<? extends Scorer> clauses, int k) {
+        TopK top = new TopK(k);
+        List<Scorer> scorers = new ArrayList<>(clauses);
+        int n = scorers.size();
+        if (k <= 0) {
+            return top.results();
+        }
+
+        while (true) {
+            sortByDoc(scorers);
+            float threshold = top.threshold();
+
+            // Find the pivot: the first scorer at which the upper bounds add up past the threshold
+            float bound = 0;
+            int pivot = -1;
+            for (int i = 0; i < n; i++) {
+                if (scorers.get(i).doc() == NO_MORE_DOCS) {
+                    break;
+                }
+                bound += scorers.get(i).maxScore();
+                if (bound > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                break;
+            }
+            int pivotDoc = scorers.get(pivot).doc();
+            while (pivot + 1 < n && scorers.get(pivot + 1).doc() == pivotDoc) {
+                pivot++;
+            }
+
+            // Block-max check: with tighter per-block bounds the pivot may still be hopeless
+            float blockBound = 0;
+            int nextDoc = pivot + 1 < n ? scorers.get(pivot + 1).doc() : NO_MORE_DOCS;
+            for (int i = 0; i <= pivot; i++) {
+                Scorer scorer = scorers.get(i);
+                int blockEnd = scorer.shallowAdvance(pivotDoc);
+                blockBound += scorer.blockMaxScore();
+                if (blockEnd != NO_MORE_DOCS) {
+                    nextDoc = Math.min(nextDoc, blockEnd + 1);
+                }
+            }
+            if (blockBound <= threshold) {
+                // No doc before nextDoc can make it: skip every lagging scorer past the blocks
+                for (int i = 0; i <= pivot; i++) {
+                    if (scorers.get(i).doc() < nextDoc) {
+                        scorers.get(i).advance(nextDoc);
+                    }
+                }
+                continue;
+            }
+
+            if (scorers.get(0).doc() == pivotDoc) {
+                // Every scorer up to the pivot sits on pivotDoc, so score it for real
+                float score = 0;
+                for (int i = 0; i <= pivot; i++) {
+                    score += scorers.get(i).score();
+                    scorers.get(i).next();
+                }
+                top.offer(pivotDoc, score);
+            } else {
+                // Bring the lagging scorers up to the pivot and re-evaluate
+                for (int i = 0; i < pivot; i++) {
+                    if (scorers.get(i).doc() < pivotDoc) {
+                        scorers.get(i).advance(pivotDoc);
+                    }
+                }
+            }
+        }
+        return top.results();
+    }
+
+    // Insertion sort: the list is short and nearly sorted from the previous round
+    private static void sortByDoc(List<Scorer> scorers) {
+        for (int i = 1; i < scorers.size(); i++) {
+            Scorer current = scorers.get(i);
+            int j = i - 1;
+            while (j >= 0 && scorers.get(j).doc() > current.doc()) {
+                scorers.set(j + 1, scorers.get(j));
+                j--;
+            }
+            scorers.set(j + 1, current);
+        }
+    }
+}
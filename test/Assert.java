@@ -0,0 +1,42 @@
+import java.util.Objects;
+
+// The few assertions the tests need; a failure is an AssertionError with both values
+public final class Assert {
+    private Assert() {
+    }
+
+    public static void assertTrue(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void assertEquals(Object expected, Object actual) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError("expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    public static void assertNull(Object actual) {
+        if (actual != null) {
+            throw new AssertionError("expected null but was <" + actual + ">");
+        }
+    }
+
+    public static <T extends Throwable> T assertThrows(Class<T> expected, Action action) {
+        try {
+            action.run();
+        } catch (Throwable e) {
+            if (expected.isInstance(e)) {
+                return expected.cast(e);
+            }
+            throw new AssertionError("expected " + expected.getSimpleName() + " but got " + e, e);
+        }
+        throw new AssertionError("expected " + expected.getSimpleName() + " but nothing was thrown");
+    }
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+}
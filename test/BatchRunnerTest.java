@@ -0,0 +1,87 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class BatchRunnerTest {
+    // Upstream answers the earlier queries last, yet every line comes out in input order, with
+    // local hits and bad lines in their places among the upstream ones
+    public void testOutputKeepsInputOrder() throws Exception {
+        ExecutorService handlers = Executors.newCachedThreadPool();
+        HttpServer upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        upstream.createContext("/books/v1/volumes", BatchRunnerTest::answer);
+        upstream.setExecutor(handlers);
+        upstream.start();
+        try (Library library = new Library(List.of(LibraryTest.book("Dune", "Frank Herbert")))) {
+            BooksApiClient client = new BooksApiClient(
+                    "http://127.0.0.1:" + upstream.getAddress().getPort() + "/books/v1", null);
+            SearchService service = new SearchService(library, client, new RateLimiter(1000, 100, 1000, 100), null);
+            String input = "title\tdelay400\n"
+                    + "title\tdelay300\n"
+                    + "title\tdune\n"
+                    + "# a comment\n"
+                    + "isbn\t123\n"
+                    + "title\tdelay200\n"
+                    + "title\tdelay100\n"
+                    + "title\tdelay0\n"
+                    + "title\tdelay250\t0\n"
+                    + "title\tdelay50\n";
+            StringWriter out = new StringWriter();
+            BatchRunner.Summary summary = new BatchRunner(service, 4).run(new BufferedReader(new StringReader(input)), out);
+
+            String[] lines = out.toString().split("\n");
+            String[] expected = {"\"title\":\"delay400\"", "\"title\":\"delay300\"", "\"title\":\"Dune\"",
+                    "Expected title", "\"title\":\"delay200\"", "\"title\":\"delay100\"", "\"title\":\"delay0\"",
+                    "limit must be", "\"title\":\"delay50\""};
+            int[] numbers = {1, 2, 3, 5, 6, 7, 8, 9, 10};
+            Assert.assertEquals(expected.length, lines.length);
+            for (int i = 0; i < lines.length; i++) {
+                Assert.assertTrue(lines[i].startsWith("{\"line\":" + numbers[i] + ","), lines[i]);
+                Assert.assertTrue(lines[i].contains(expected[i]), lines[i]);
+            }
+            Assert.assertEquals(new BatchRunner.Summary(9, 2), summary);
+        } finally {
+            upstream.stop(0);
+            handlers.shutdownNow();
+        }
+    }
+
+    // One volume titled after the query, sent after the delay the query names
+    private static void answer(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String raw = exchange.getRequestURI().getRawQuery();
+            String q = "";
+            for (String pair : raw.split("&")) {
+                if (pair.startsWith("q=")) {
+                    q = URLDecoder.decode(pair.substring(2), StandardCharsets.UTF_8);
+                }
+            }
+            // Title searches come as intitle:"words"
+            String query = q.substring(q.indexOf(':') + 1).replace("\"", "");
+            if (query.startsWith("delay")) {
+                try {
+                    Thread.sleep(Long.parseLong(query.substring("delay".length())));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = ("{\"items\":[{\"volumeInfo\":{\"title\":\"" + query + "\"}}]}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
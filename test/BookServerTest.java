@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+public final class BookServerTest {
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    public void testStatusCodes() throws Exception {
+        try (Library library = new Library(List.of(LibraryTest.book("Dune", "Frank Herbert")));
+             BookServer server = BookServer.start(service(library), 0)) {
+            Assert.assertEquals(200, get(server, "/search/title?q=dune", null).statusCode());
+            Assert.assertEquals(404, get(server, "/search/isbn?q=dune", null).statusCode());
+            Assert.assertEquals(400, get(server, "/search/title", null).statusCode());
+            Assert.assertEquals(400, get(server, "/search/title?q=dune&limit=many", null).statusCode());
+            Assert.assertEquals(400, get(server, "/search/title?q=dune&limit=41", null).statusCode());
+            HttpResponse<String> malformed = get(server, "/search/genre?q=" + encode("fantasy AND"), null);
+            Assert.assertEquals(400, malformed.statusCode());
+            Assert.assertTrue(malformed.body().contains("Invalid query"), malformed.body());
+
+            // Nothing matches locally, so these go upstream, which is not there: the first takes the
+            // client's only permit and fails upstream, the second finds no permit left
+            HttpResponse<String> failed = get(server, "/search/title?q=unheard", null);
+            Assert.assertEquals(502, failed.statusCode());
+            Assert.assertTrue(failed.body().contains("Search failed"), failed.body());
+            Assert.assertEquals(429, get(server, "/search/title?q=unseen", null).statusCode());
+        }
+    }
+
+    // The tenant header picks the budget only on requests from a trusted proxy
+    public void testTenantHeaderTrustedOnlyFromProxies() throws Exception {
+        try (Library library = new Library(List.of(LibraryTest.book("Dune", "Frank Herbert")))) {
+            try (BookServer server = BookServer.start(service(library), 0)) {
+                Assert.assertEquals(502, get(server, "/search/title?q=first", "alice").statusCode());
+                Assert.assertEquals(429, get(server, "/search/title?q=second", "bob").statusCode());
+            }
+            try (BookServer server = BookServer.start(service(library), 0,
+                    Set.of(InetAddress.getByName("127.0.0.1")))) {
+                Assert.assertEquals(502, get(server, "/search/title?q=first", "alice").statusCode());
+                Assert.assertEquals(502, get(server, "/search/title?q=second", "bob").statusCode());
+                Assert.assertEquals(429, get(server, "/search/title?q=third", "alice").statusCode());
+                // A blank header falls back to the proxy's own address
+                Assert.assertEquals(502, get(server, "/search/title?q=fourth", " ").statusCode());
+            }
+        }
+    }
+
+    // One upstream permit per tenant and no refill to speak of; upstream is a port nobody listens on
+    private static SearchService service(Library library) throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        BooksApiClient upstream = new BooksApiClient("http://127.0.0.1:" + closedPort + "/books/v1", null);
+        return new SearchService(library, upstream, new RateLimiter(100, 100, 0.001, 1), null);
+    }
+
+    private HttpResponse<String> get(BookServer server, String path, String tenant)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path));
+        if (tenant != null) {
+            request.header("X-BookSage-Tenant", tenant);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String encode(String text) {
+        return URLEncoder.encode(text, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,30 @@
+import java.util.List;
+
+public final class BookTest {
+    public void testUpstreamBooksAreNotInterned() {
+        int authors = Book.AUTHORS.size();
+        int genres = Book.GENRES.size();
+        int publishers = Book.PUBLISHERS.size();
+        Book book = new Book(Book.NO_ID, "Upstream Only", "", List.of("Nobody Interned"), List.of("Unlisted Genre"),
+                "Unlisted Press", "", 0, 0f, 0);
+
+        Assert.assertEquals(authors, Book.AUTHORS.size());
+        Assert.assertEquals(genres, Book.GENRES.size());
+        Assert.assertEquals(publishers, Book.PUBLISHERS.size());
+        Assert.assertEquals(List.of("Nobody Interned"), book.authors());
+        Assert.assertEquals(List.of("Unlisted Genre"), book.categories());
+        Assert.assertEquals("Unlisted Press", book.publisher());
+    }
+
+    public void testUpstreamBookKeepsItsNamesInTheCatalog() {
+        Book book = new Book(Book.NO_ID, "Upstream Only", "", List.of("Ann Leckie"), List.of("Science Fiction"),
+                "Orbit", "A ship's AI in a human body.", 0, 0f, 0);
+        Book stored = ColumnStore.of(List.of(book)).book(0);
+
+        Assert.assertEquals(0, stored.id());
+        Assert.assertEquals(List.of("Ann Leckie"), stored.authors());
+        Assert.assertEquals(List.of("Science Fiction"), stored.categories());
+        Assert.assertEquals("Orbit", stored.publisher());
+        Assert.assertEquals("A ship's AI in a human body.", stored.description());
+    }
+}
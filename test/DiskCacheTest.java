@@ -0,0 +1,82 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public final class DiskCacheTest {
+    private static final int CAPACITY = 1 << 16;
+    // Header, then the first record's header
+    private static final int FIRST_PAYLOAD = 64 + 16;
+
+    private static final QueryKey HOBBIT = QueryKey.of(SearchType.TITLE, "hobbit", 0, 10);
+    private static final QueryKey DUNE = QueryKey.of(SearchType.TITLE, "dune", 0, 10);
+
+    public void testBooksSurviveReopening() throws IOException {
+        try (TestFiles files = new TestFiles()) {
+            Path path = files.resolve("results.seg");
+            try (DiskCache cache = DiskCache.open(path, CAPACITY)) {
+                cache.put(HOBBIT, List.of(book("The Hobbit")));
+            }
+            try (DiskCache cache = DiskCache.open(path, CAPACITY)) {
+                Assert.assertEquals(List.of(book("The Hobbit")), cache.get(HOBBIT).books());
+                Assert.assertNull(cache.get(DUNE));
+            }
+        }
+    }
+
+    public void testCorruptRecordIsAMiss() throws IOException {
+        try (TestFiles files = new TestFiles()) {
+            Path path = files.resolve("results.seg");
+            try (DiskCache cache = DiskCache.open(path, CAPACITY)) {
+                cache.put(HOBBIT, List.of(book("The Hobbit")));
+                cache.put(DUNE, List.of(book("Dune")));
+
+                // Garble the book count just past the key, as a torn write would
+                int keyLength = 4 + "hobbit".length() + 9;
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.wrap(new byte[] {0x7f, 0x7f, 0x7f, 0x7f}), FIRST_PAYLOAD + keyLength);
+                }
+
+                Assert.assertNull(cache.get(HOBBIT));
+                Assert.assertEquals(List.of(book("Dune")), cache.get(DUNE).books());
+
+                // A fresh record for the key shadows the broken one
+                cache.put(HOBBIT, List.of(book("The Hobbit")));
+                Assert.assertEquals(List.of(book("The Hobbit")), cache.get(HOBBIT).books());
+            }
+        }
+    }
+
+    public void testSecondOpenIsRefused() throws IOException {
+        try (TestFiles files = new TestFiles()) {
+            Path path = files.resolve("results.seg");
+            try (DiskCache cache = DiskCache.open(path, CAPACITY)) {
+                Assert.assertThrows(IOException.class, () -> DiskCache.open(path, CAPACITY));
+                cache.put(HOBBIT, List.of(book("The Hobbit")));
+            }
+            DiskCache.open(path, CAPACITY).close();
+        }
+    }
+
+    public void testCompactionKeepsLatestRecords() throws IOException {
+        try (TestFiles files = new TestFiles()) {
+            Path path = files.resolve("results.seg");
+            try (DiskCache cache = DiskCache.open(path, 4096)) {
+                for (int i = 0; i < 200; i++) {
+                    cache.put(HOBBIT, List.of(book("The Hobbit " + i)));
+                }
+                Assert.assertEquals(List.of(book("The Hobbit 199")), cache.get(HOBBIT).books());
+                Assert.assertEquals(1, cache.size());
+            }
+            try (DiskCache cache = DiskCache.open(path, 4096)) {
+                Assert.assertEquals(List.of(book("The Hobbit 199")), cache.get(HOBBIT).books());
+            }
+        }
+    }
+
+    private static Book book(String title) {
+        return new Book(Book.NO_ID, title, "", List.of("J. R. R. Tolkien"), List.of("Fantasy"), "", "", 0, 0f, 0);
+    }
+}
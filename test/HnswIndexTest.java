@@ -0,0 +1,77 @@
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public final class HnswIndexTest {
+    private static final int DIMENSIONS = 32;
+
+    // Against an exact scan, the default beam should find nearly all of the true top 10
+    public void testRecallAgainstBruteForce() {
+        int n = 5000;
+        Random random = new Random(42);
+        float[][] centres = new float[50][];
+        for (int c = 0; c < centres.length; c++) {
+            centres[c] = gaussian(random, 1f);
+        }
+        float[][] vectors = new float[n][];
+        for (int i = 0; i < n; i++) {
+            vectors[i] = unit(add(centres[random.nextInt(centres.length)], gaussian(random, 0.5f)));
+        }
+        HnswIndex.Builder builder = new HnswIndex.Builder(DIMENSIONS, n);
+        IntStream.range(0, n).parallel().forEach(i -> builder.insert(i, vectors[i]));
+        HnswIndex index = builder.build();
+
+        int queries = 200;
+        int k = 10;
+        int found = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] query = unit(add(centres[random.nextInt(centres.length)], gaussian(random, 0.5f)));
+            TopK exact = new TopK(k);
+            for (int i = 0; i < n; i++) {
+                exact.offer(i, dot(query, vectors[i]));
+            }
+            List<TopK.Hit> expected = exact.results();
+            float kth = expected.get(k - 1).score();
+            List<TopK.Hit> hits = index.search(query, k);
+            Assert.assertEquals(k, hits.size());
+            for (TopK.Hit hit : hits) {
+                // Ties with the k-th best are as good an answer as it
+                found += hit.score() >= kth - 1e-5f ? 1 : 0;
+            }
+        }
+        double recall = found / (double) (queries * k);
+        Assert.assertTrue(recall >= 0.95, "recall@10 was " + recall);
+    }
+
+    private static float[] gaussian(Random random, float scale) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+
+    private static float[] add(float[] a, float[] b) {
+        float[] sum = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            sum[i] = a[i] + b[i];
+        }
+        return sum;
+    }
+
+    private static float[] unit(float[] vector) {
+        float norm = (float) Math.sqrt(dot(vector, vector));
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] /= norm;
+        }
+        return vector;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class LibraryTest {
+    public void testAuthorSpellingsAreOneAuthor() throws IOException {
+        try (Library library = new Library(List.of(
+                book("The Left Hand of Darkness", "Ursula K. Le Guin"),
+                book("The Dispossessed", "URSULA K. LE GUIN")))) {
+            library.add(List.of(book("A Wizard of Earthsea", "  Ursula K.  Le Guin ")));
+            library.add(List.of(book("The Lathe of Heaven", "Ursula K. Le Gu\u00efn"), book("Dune", "Frank Herbert")));
+
+            List<String> titles = titles(library.searchAuthor("ursula le guin", 10));
+            Assert.assertEquals(List.of("The Left Hand of Darkness", "The Dispossessed", "A Wizard of Earthsea",
+                    "The Lathe of Heaven"), titles);
+            Assert.assertEquals(List.of("The Left Hand of Darkness", "The Dispossessed"),
+                    titles(library.searchAuthor("le guin", 2)));
+        }
+    }
+
+    public void testSplitCatalogRanksLikeOneSegment() throws IOException {
+        try (Library whole = Library.load(Path.of("data", "books.tsv"));
+             Library split = new Library(List.of())) {
+            List<Book> books = new ArrayList<>();
+            for (int id = 0; id < whole.size(); id++) {
+                books.add(whole.get(id));
+            }
+            int third = books.size() / 3;
+            split.add(books.subList(0, third));
+            split.add(books.subList(third, 2 * third));
+            split.add(books.subList(2 * third, books.size()));
+            Assert.assertEquals(1, whole.segmentCount());
+            Assert.assertEquals(3, split.segmentCount());
+            for (String query : List.of("world", "the ring", "war and peace", "a dragon in the mountain", "night")) {
+                Assert.assertEquals(ids(whole.searchTitle(query, 5)), ids(split.searchTitle(query, 5)));
+            }
+        }
+    }
+
+    public void testMergedSegmentsKeepIdsAcrossReopening() throws IOException {
+        try (TestFiles files = new TestFiles()) {
+            List<String> authors = List.of("Jane Austen", "Frank Herbert", "Ann Leckie", "Mervyn Peake", "Iain Banks");
+            List<String> added = new ArrayList<>();
+            try (Library library = Library.open(files.resolve("index"))) {
+                for (int i = 0; i < 5; i++) {
+                    String title = "Book " + i;
+                    library.add(List.of(book(title, authors.get(i))));
+                    added.add(title);
+                }
+            }
+            try (Library library = Library.open(files.resolve("index"))) {
+                // Four one-book segments merge into one; the fifth waits for three more
+                Assert.assertEquals(2, library.segmentCount());
+                Assert.assertEquals(5, library.size());
+                for (int id = 0; id < added.size(); id++) {
+                    Assert.assertEquals(added.get(id), library.get(id).title());
+                    Assert.assertEquals(id, library.get(id).id());
+                }
+                Assert.assertEquals(List.of("Book 3"), titles(library.searchAuthor("mervyn peake", 10)));
+                Assert.assertEquals(List.of("Book 4"), titles(library.searchTitle("book 4", 1)));
+            }
+        }
+    }
+
+    public void testSecondOpenIsReadOnly() throws IOException {
+        try (TestFiles files = new TestFiles()) {
+            try (Library owner = Library.open(files.resolve("index"))) {
+                owner.add(List.of(book("Dune", "Frank Herbert")));
+                try (Library reader = Library.open(files.resolve("index"))) {
+                    Assert.assertTrue(reader.isReadOnly(), "second open should be read-only");
+                    Assert.assertEquals(List.of("Dune"), titles(reader.searchAuthor("frank herbert", 10)));
+                    Assert.assertThrows(IOException.class, () -> reader.add(List.of(book("Emma", "Jane Austen"))));
+                }
+                Assert.assertTrue(!owner.isReadOnly(), "owner should stay writable");
+            }
+            try (Library library = Library.open(files.resolve("index"))) {
+                Assert.assertTrue(!library.isReadOnly(), "the directory should be free after close");
+                Assert.assertEquals(1, library.size());
+            }
+        }
+    }
+
+    public void testCompletionsAreRankedByTotalWeight() throws IOException {
+        // Each segment's own favourite is a different title; the one all three share wins overall
+        try (Library library = new Library(List.of(
+                book("Xenocide", "Orson Scott Card"), book("Xenocide", "Orson Scott Card"),
+                book("Xanth", "Piers Anthony"), book("Xeelee", "Stephen Baxter")))) {
+            library.add(List.of(book("Xenogenesis", "Octavia Butler"), book("Xenogenesis", "Octavia Butler"),
+                    book("Xeelee", "Stephen Baxter")));
+            library.add(List.of(book("Xenos", "Dan Abnett"), book("Xenos", "Dan Abnett"),
+                    book("xeelee ", "Stephen Baxter")));
+
+            Assert.assertEquals(List.of("Xeelee"), library.completeTitle("xe", 1));
+            Assert.assertEquals(List.of("Xeelee", "Xenocide", "Xenogenesis"), library.completeTitle("x", 3));
+            Assert.assertEquals(List.of("Stephen Baxter"), library.completeAuthor("s", 1));
+        }
+    }
+
+    private static List<String> titles(List<Book> books) {
+        List<String> titles = new ArrayList<>();
+        for (Book book : books) {
+            titles.add(book.title());
+        }
+        return titles;
+    }
+
+    private static List<Integer> ids(List<Book> books) {
+        List<Integer> ids = new ArrayList<>();
+        for (Book book : books) {
+            ids.add(book.id());
+        }
+        return ids;
+    }
+
+    static Book book(String title, String author) {
+        return new Book(0, title, "", List.of(author), List.of("Fiction"), "", "", 0, 0f, 0);
+    }
+}
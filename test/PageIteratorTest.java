@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public final class PageIteratorTest {
+    // Short chunks come back well before the end of the list; only the empty one ends paging
+    public void testOnlyAnEmptyChunkEndsPaging() {
+        Source source = new Source(95, Set.of(3, 4, 5, 6, 7, 8, 9, 41, 42));
+        List<String> seen = new ArrayList<>();
+        try (PageIterator pages = new PageIterator(source, 10)) {
+            while (pages.hasNext()) {
+                for (Book book : pages.next()) {
+                    seen.add(book.title());
+                }
+            }
+        }
+        Assert.assertEquals(source.expected(), seen);
+    }
+
+    // A failed chunk surfaces from next() and is fetched again on the following call, without
+    // losing, repeating or reordering any books
+    public void testFailedChunkIsRetried() {
+        Source source = new Source(60, Set.of());
+        source.failAt.add(20);
+        List<String> seen = new ArrayList<>();
+        int failures = 0;
+        try (PageIterator pages = new PageIterator(source, 10)) {
+            while (pages.hasNext()) {
+                try {
+                    for (Book book : pages.next()) {
+                        seen.add(book.title());
+                    }
+                } catch (CompletionException e) {
+                    Assert.assertTrue(e.getCause() instanceof IOException, "unexpected failure " + e);
+                    failures++;
+                }
+            }
+        }
+        Assert.assertEquals(1, failures);
+        Assert.assertEquals(source.expected(), seen);
+    }
+
+    // Results at positions below total, with the missing ones left out as Google Books sometimes does
+    private static final class Source implements PageIterator.PageSource {
+        final int total;
+        final Set<Integer> missing;
+        // Starts whose next fetch fails, once each
+        final Set<Integer> failAt = new HashSet<>();
+
+        Source(int total, Set<Integer> missing) {
+            this.total = total;
+            this.missing = missing;
+        }
+
+        @Override
+        public CompletableFuture<List<Book>> fetch(int startIndex, int count) {
+            if (failAt.remove(startIndex)) {
+                return CompletableFuture.failedFuture(new IOException("Fetch at " + startIndex + " failed"));
+            }
+            List<Book> books = new ArrayList<>();
+            for (int i = startIndex; i < Math.min(total, startIndex + count); i++) {
+                if (!missing.contains(i)) {
+                    books.add(book(i));
+                }
+            }
+            return CompletableFuture.completedFuture(books);
+        }
+
+        List<String> expected() {
+            List<String> titles = new ArrayList<>();
+            for (int i = 0; i < total; i++) {
+                if (!missing.contains(i)) {
+                    titles.add(book(i).title());
+                }
+            }
+            return titles;
+        }
+
+        private static Book book(int position) {
+            return new Book(Book.NO_ID, "Result " + position, "", List.of(), List.of(), "", "", 0, 0f, 0);
+        }
+    }
+}
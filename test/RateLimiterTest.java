@@ -0,0 +1,73 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+public final class RateLimiterTest {
+    public void testTenantBurstThenRejects() {
+        RateLimiter limiter = new RateLimiter(1000, 100, 0.01, 2);
+        Assert.assertTrue(granted(limiter.acquire("a", 0, TimeUnit.SECONDS)), "first permit is in the burst");
+        Assert.assertTrue(granted(limiter.acquire("a", 0, TimeUnit.SECONDS)), "second permit is in the burst");
+        Assert.assertEquals("Rate limit exceeded for a", rejection(limiter.acquire("a", 0, TimeUnit.SECONDS)));
+        // Other tenants have buckets of their own
+        Assert.assertTrue(granted(limiter.acquire("b", 0, TimeUnit.SECONDS)), "another tenant is not limited");
+    }
+
+    public void testGlobalLimitCoversEveryTenant() {
+        RateLimiter limiter = new RateLimiter(0.01, 2, 1000, 100);
+        Assert.assertTrue(granted(limiter.acquire("a", 0, TimeUnit.SECONDS)), "first permit is in the burst");
+        Assert.assertTrue(granted(limiter.acquire("b", 0, TimeUnit.SECONDS)), "second permit is in the burst");
+        Assert.assertEquals("Upstream rate limit exceeded", rejection(limiter.acquire("c", 0, TimeUnit.SECONDS)));
+    }
+
+    public void testWaitsWithinDeadlineOnly() throws Exception {
+        RateLimiter limiter = new RateLimiter(1000, 100, 20, 1);
+        Assert.assertTrue(granted(limiter.acquire("a", 0, TimeUnit.SECONDS)), "first permit is in the burst");
+        // The next permit is 50 ms away: too far for 10 ms, near enough for a second
+        Assert.assertEquals("Rate limit exceeded for a", rejection(limiter.acquire("a", 10, TimeUnit.MILLISECONDS)));
+        long start = System.nanoTime();
+        CompletableFuture<Void> waiting = limiter.acquire("a", 1, TimeUnit.SECONDS);
+        Assert.assertTrue(!waiting.isDone(), "a permit in the future should not be granted at once");
+        waiting.get(1, TimeUnit.SECONDS);
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40), "the permit came too early");
+    }
+
+    public void testGlobalRejectionRefundsTenantPermit() throws Exception {
+        RateLimiter limiter = new RateLimiter(100, 1, 0.01, 1);
+        Assert.assertTrue(granted(limiter.acquire("a", 0, TimeUnit.SECONDS)), "first permit is in the burst");
+        Assert.assertEquals("Upstream rate limit exceeded", rejection(limiter.acquire("b", 0, TimeUnit.SECONDS)));
+        Thread.sleep(50);
+        // Without the refund, b's only permit would be gone for 100 seconds
+        Assert.assertTrue(granted(limiter.acquire("b", 0, TimeUnit.SECONDS)), "b's permit should have been refunded");
+    }
+
+    public void testTenantMapStaysBounded() {
+        RateLimiter limiter = new RateLimiter(1e9, Integer.MAX_VALUE, 0.01, 1);
+        for (int i = 0; i < 2 * RateLimiter.MAX_TENANTS; i++) {
+            limiter.acquire("tenant-" + i, 0, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(RateLimiter.MAX_TENANTS, limiter.tenantCount());
+        // Tenants past the cap share the overflow bucket, which is just as limited
+        Assert.assertEquals("Rate limit exceeded for late", rejection(limiter.acquire("late", 0, TimeUnit.SECONDS)));
+    }
+
+    public void testRefilledTenantsAreSwept() throws Exception {
+        RateLimiter limiter = new RateLimiter(1e9, Integer.MAX_VALUE, 1000, 1);
+        for (int i = 0; i < RateLimiter.MAX_TENANTS; i++) {
+            limiter.acquire("tenant-" + i, 0, TimeUnit.SECONDS);
+        }
+        Thread.sleep(20);
+        Assert.assertTrue(granted(limiter.acquire("late", 0, TimeUnit.SECONDS)), "a new tenant should get a permit");
+        Assert.assertEquals(1, limiter.tenantCount());
+    }
+
+    private static boolean granted(CompletableFuture<Void> permit) {
+        return permit.isDone() && !permit.isCompletedExceptionally();
+    }
+
+    private static String rejection(CompletableFuture<Void> permit) {
+        Assert.assertTrue(permit.isCompletedExceptionally(), "expected a rejection");
+        CompletionException e = Assert.assertThrows(CompletionException.class, permit::join);
+        Assert.assertTrue(e.getCause() instanceof RateLimitedException, "expected RateLimitedException, got " + e.getCause());
+        return e.getCause().getMessage();
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.BitSet;
+import java.util.Random;
+
+public final class RoaringBitmapTest {
+    private static final int CHUNK = 1 << 16;
+    private static final int CHUNKS = 6;
+
+    // Every pairing of empty, array and bitmap containers, including ones that cross the array
+    // limit either way in the result, against the same operations on java.util.BitSet
+    public void testSetOperationsMatchBitSet() {
+        Random random = new Random(5);
+        for (int run = 0; run < 40; run++) {
+            BitSet left = randomSet(random);
+            BitSet right = randomSet(random);
+            RoaringBitmap a = bitmap(left);
+            RoaringBitmap b = bitmap(right);
+            assertSame(left, a);
+
+            BitSet and = (BitSet) left.clone();
+            and.and(right);
+            assertSame(and, a.and(b));
+            BitSet or = (BitSet) left.clone();
+            or.or(right);
+            assertSame(or, a.or(b));
+            BitSet andNot = (BitSet) left.clone();
+            andNot.andNot(right);
+            assertSame(andNot, a.andNot(b));
+        }
+    }
+
+    public void testCursorAdvancesLikeNextSetBit() {
+        Random random = new Random(9);
+        BitSet set = randomSet(random);
+        RoaringBitmap bitmap = bitmap(set);
+        RoaringBitmap.Cursor cursor = bitmap.cursor();
+        for (int target = 0; target < CHUNKS * CHUNK; target += 1 + random.nextInt(3000)) {
+            cursor.advance(target);
+            int expected = set.nextSetBit(target);
+            Assert.assertEquals(expected < 0 ? RoaringBitmap.Cursor.NO_MORE_DOCS : expected, cursor.doc());
+        }
+    }
+
+    // Each chunk is empty, sparse, around the array limit, dense or full
+    private static BitSet randomSet(Random random) {
+        BitSet set = new BitSet();
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            int base = chunk * CHUNK;
+            switch (random.nextInt(5)) {
+                case 0:
+                    break;
+                case 1:
+                    fill(set, base, 1 + random.nextInt(200), random);
+                    break;
+                case 2:
+                    fill(set, base, 3900 + random.nextInt(400), random);
+                    break;
+                case 3:
+                    fill(set, base, 20_000 + random.nextInt(30_000), random);
+                    break;
+                default:
+                    set.set(base, base + CHUNK);
+            }
+        }
+        return set;
+    }
+
+    private static void fill(BitSet set, int base, int count, Random random) {
+        for (int i = 0; i < count; i++) {
+            set.set(base + random.nextInt(CHUNK));
+        }
+    }
+
+    private static RoaringBitmap bitmap(BitSet set) {
+        RoaringBitmap.Builder builder = new RoaringBitmap.Builder();
+        set.stream().forEach(builder::add);
+        return builder.build();
+    }
+
+    private static void assertSame(BitSet expected, RoaringBitmap actual) {
+        Assert.assertEquals(expected.cardinality(), actual.cardinality());
+        BitSet ids = new BitSet();
+        for (int id : actual.toArray(Integer.MAX_VALUE)) {
+            ids.set(id);
+        }
+        Assert.assertEquals(expected, ids);
+        for (int id = expected.nextSetBit(0); id >= 0; id = expected.nextSetBit(id + 1 + id % 97)) {
+            Assert.assertTrue(actual.contains(id), "missing " + id);
+        }
+        for (int id = expected.nextClearBit(0); id < CHUNKS * CHUNK; id = expected.nextClearBit(id + 1 + id % 89)) {
+            Assert.assertTrue(!actual.contains(id), "unexpected " + id);
+        }
+    }
+}
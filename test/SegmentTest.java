@@ -0,0 +1,43 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class SegmentTest {
+    public void testOpenedSegmentAnswersLikeTheBuiltOne() throws IOException {
+        List<Book> books = new ArrayList<>();
+        String[] authors = {"Ursula K. Le Guin", "Frank Herbert", "Ann Leckie", "Iain M. Banks"};
+        String[] genres = {"Science Fiction", "Fantasy", "Young Adult", "Literary Fiction"};
+        for (int i = 0; i < 200; i++) {
+            String title = "Title " + i + (i % 7 == 0 ? " of the Desert" : " of the Sea");
+            books.add(new Book(i, title, "", List.of(authors[i % 4]), List.of(genres[i % 4], genres[(i / 4) % 4]),
+                    "", "A story about planets, wizards and ship " + i, 0, 0f, 0));
+        }
+        try (TestFiles files = new TestFiles()) {
+            Path file = files.resolve("segment.seg");
+            Segment built = Segment.build(ColumnStore.of(books), null);
+            built.write(file);
+            Segment opened = Segment.open(file);
+
+            Assert.assertTrue(opened.catalog().indexes() != null, "indexes should be stored in the segment file");
+            Assert.assertEquals(built.searchTitle("desert sea", 10, built.titleStats("desert sea")),
+                    opened.searchTitle("desert sea", 10, opened.titleStats("desert sea")));
+            Assert.assertEquals(built.rankGenre("fantasy young adult", 10, built.genreStats("fantasy young adult")),
+                    opened.rankGenre("fantasy young adult", 10, opened.genreStats("fantasy young adult")));
+            Assert.assertTrue(Arrays.equals(built.filterGenre("fantasy NOT young adult", 50),
+                    opened.filterGenre("fantasy NOT young adult", 50)), "genre filters should match");
+            Assert.assertEquals(built.genres(), opened.genres());
+            int author = opened.findAuthor("frank herbert");
+            Assert.assertEquals(built.findAuthor("frank herbert"), author);
+            Assert.assertEquals(50, opened.authorBooks(author, 100).length);
+            Assert.assertEquals(built.matchAuthor("lekie", 5), opened.matchAuthor("lekie", 5));
+            Assert.assertEquals(built.titleCompletions().completions("title 1", 5),
+                    opened.titleCompletions().completions("title 1", 5));
+            Assert.assertEquals(built.authorCompletions().completions("i", 5),
+                    opened.authorCompletions().completions("i", 5));
+            float[] vector = BookEmbedding.of(books.get(3));
+            Assert.assertEquals(built.similar(vector, 5), opened.similar(vector, 5));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Scratch directories for tests, removed again when the test is done
+public final class TestFiles implements AutoCloseable {
+    private final Path directory;
+
+    public TestFiles() throws IOException {
+        this.directory = Files.createTempDirectory("booksage-test");
+    }
+
+    public Path resolve(String name) {
+        return directory.resolve(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+
+// Runs every public no-argument method whose name starts with "test" on a fresh instance of each
+// test class, and exits non-zero if any of them throws. Pass class names to run just those.
+public final class TestRunner {
+    private static final String[] TESTS = {
+            "BatchRunnerTest",
+            "BookServerTest",
+            "BookTest",
+            "DiskCacheTest",
+            "HnswIndexTest",
+            "LibraryTest",
+            "PageIteratorTest",
+            "RateLimiterTest",
+            "RoaringBitmapTest",
+            "SegmentTest",
+            "TimingWheelTest",
+            "TinyLfuCacheTest",
+            "VolumeBodySubscriberTest",
+            "WandTest",
+    };
+
+    public static void main(String[] args) throws ReflectiveOperationException {
+        int passed = 0;
+        int failed = 0;
+        for (String name : args.length > 0 ? args : TESTS) {
+            Class<?> type = Class.forName(name);
+            Method[] methods = type.getMethods();
+            Arrays.sort(methods, Comparator.comparing(Method::getName));
+            for (Method method : methods) {
+                if (!method.getName().startsWith("test") || method.getParameterCount() != 0
+                        || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                try {
+                    method.invoke(type.getDeclaredConstructor().newInstance());
+                    passed++;
+                } catch (InvocationTargetException e) {
+                    failed++;
+                    System.out.println("FAIL " + name + "." + method.getName());
+                    e.getCause().printStackTrace(System.out);
+                }
+            }
+        }
+        System.out.println(passed + " passed, " + failed + " failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
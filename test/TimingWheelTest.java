@@ -0,0 +1,70 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public final class TimingWheelTest {
+    private static final long TICK = 1 << 10;
+
+    private static final class Entry extends TimingWheel.Timer {
+        long expired = -1;
+    }
+
+    // Deadlines from milliseconds to beyond the last level, reached in steps small and large:
+    // every timer expires once, never before its deadline, and no later than the first advance
+    // into a finer-level tick (TICK ms) past the one its deadline falls in
+    public void testExpiresAcrossLevels() {
+        Random random = new Random(11);
+        long start = 1_700_000_000_123L;
+        TimingWheel wheel = new TimingWheel(start);
+        long[] spans = {1L << 10, 1L << 16, 1L << 22, 1L << 28, 1L << 34};
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Entry entry = new Entry();
+            wheel.schedule(entry, start + 1 + (long) (random.nextDouble() * spans[i % spans.length]));
+            entries.add(entry);
+        }
+        // Some timers move or go away before they are due
+        for (int i = 0; i < 500; i++) {
+            Entry entry = entries.get(random.nextInt(entries.size()));
+            if (i % 2 == 0) {
+                wheel.schedule(entry, start + 1 + (long) (random.nextDouble() * spans[random.nextInt(spans.length)]));
+                entry.expired = -1;
+            } else {
+                wheel.cancel(entry);
+                entry.expired = -2;
+            }
+        }
+
+        long now = start;
+        long end = start + (1L << 34) + 1;
+        while (now < end) {
+            long previous = now;
+            now += random.nextInt(4) == 0 ? (long) (random.nextDouble() * (1L << 30)) : 1 + random.nextInt(5000);
+            long reached = now;
+            wheel.advance(now, timer -> {
+                Entry entry = (Entry) timer;
+                Assert.assertTrue(entry.expired == -1, "a timer expired twice or after being cancelled");
+                Assert.assertTrue(entry.expiresAt() <= reached,
+                        "deadline " + entry.expiresAt() + " expired early, at " + reached);
+                Assert.assertTrue(previous / TICK <= entry.expiresAt() / TICK,
+                        "deadline " + entry.expiresAt() + " expired late, at " + reached);
+                entry.expired = reached;
+            });
+        }
+        for (Entry entry : entries) {
+            Assert.assertTrue(entry.expired != -1, "deadline " + entry.expiresAt() + " never expired");
+        }
+    }
+
+    // Within its tick a deadline is not looked at; it expires when the wheel turns past the tick
+    public void testDeadlineExpiresWhenItsTickPasses() {
+        TimingWheel wheel = new TimingWheel(0);
+        Entry entry = new Entry();
+        wheel.schedule(entry, 5);
+        List<TimingWheel.Timer> expired = new ArrayList<>();
+        wheel.advance(TICK - 1, expired::add);
+        Assert.assertEquals(0, expired.size());
+        wheel.advance(TICK, expired::add);
+        Assert.assertEquals(List.of(entry), expired);
+    }
+}
@@ -0,0 +1,41 @@
+public final class TinyLfuCacheTest {
+    // Weights come from the values, here strings weighing their length
+    public void testStaysWithinByteBudget() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(1000, 100, String::length);
+        for (int i = 0; i < 500; i++) {
+            cache.put(i, "x".repeat(1 + i % 150));
+            Assert.assertTrue(cache.stats().weightedSize() <= 1000,
+                    "weighed " + cache.stats().weightedSize() + " after " + (i + 1) + " puts");
+        }
+        Assert.assertTrue(cache.stats().evictions() > 0, "the budget should have forced evictions");
+
+        cache.put(-1, "x".repeat(1001));
+        Assert.assertNull(cache.get(-1));
+        cache.put(499, "x".repeat(1001));
+        Assert.assertNull(cache.get(499));
+    }
+
+    // A scan of keys seen once must not flush keys that are read often. There are more of them
+    // than the protected segment holds, so the rest sit in probation and only admission by
+    // frequency keeps the scan from pushing them out.
+    public void testFrequentKeysSurviveAScan() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(1000, 1000, value -> 10);
+        for (int i = 0; i < 100; i++) {
+            cache.put("hot" + i, "value");
+        }
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 100; i++) {
+                cache.get("hot" + i);
+            }
+        }
+        for (int i = 0; i < 2000; i++) {
+            cache.put("scan" + i, "value");
+        }
+        int kept = 0;
+        for (int i = 0; i < 100; i++) {
+            kept += cache.get("hot" + i) != null ? 1 : 0;
+        }
+        Assert.assertTrue(kept >= 95, "only " + kept + " of 100 frequent keys survived the scan");
+        Assert.assertTrue(cache.size() <= 100, "cache holds " + cache.size() + " entries of weight 10");
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+public final class VolumeBodySubscriberTest {
+    // A gzip body decodes the same however the network cuts it up, including one byte at a time
+    // and cuts inside the header and the trailer
+    public void testGzipSplitAcrossChunks() throws IOException {
+        byte[] json = body(40);
+        List<String> expected = titles(receive(false, List.of(json)));
+        Assert.assertEquals(40, expected.size());
+        Random random = new Random(3);
+        for (byte[] gzip : List.of(gzip(json), gzipWithNameAndExtra(json))) {
+            for (int run = 0; run < 50; run++) {
+                int maxChunk = run == 0 ? 1 : 1 + random.nextInt(run < 25 ? 16 : 512);
+                Assert.assertEquals(expected, titles(receive(true, split(gzip, maxChunk, random))));
+            }
+        }
+    }
+
+    public void testTornGzipBodyFails() throws IOException {
+        byte[] gzip = gzip(body(5));
+        byte[] torn = new byte[gzip.length - 3];
+        System.arraycopy(gzip, 0, torn, 0, torn.length);
+        Assert.assertThrows(CompletionException.class, () -> receive(true, List.of(torn)));
+        gzip[gzip.length - 8] ^= 1;
+        Assert.assertThrows(CompletionException.class, () -> receive(true, List.of(gzip)));
+    }
+
+    private static List<Book> receive(boolean gzip, List<byte[]> chunks) {
+        VolumeBodySubscriber subscriber = new VolumeBodySubscriber(gzip);
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        // Several buffers go to each onNext, as HttpClient delivers them
+        for (int i = 0; i < chunks.size(); i += 3) {
+            List<ByteBuffer> buffers = new ArrayList<>();
+            for (int j = i; j < Math.min(i + 3, chunks.size()); j++) {
+                buffers.add(ByteBuffer.wrap(chunks.get(j)));
+            }
+            subscriber.onNext(buffers);
+        }
+        subscriber.onComplete();
+        return subscriber.getBody().toCompletableFuture().join();
+    }
+
+    private static byte[] body(int books) {
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < books; i++) {
+            json.append(i > 0 ? "," : "").append("{\"volumeInfo\":{\"title\":\"Book ").append(i)
+                    .append(" of the Sea\",\"authors\":[\"Author ").append(i % 7).append("\"],\"averageRating\":4.5}}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    // A member with the optional FEXTRA and FNAME header fields, which GZIPOutputStream never writes
+    private static byte[] gzipWithNameAndExtra(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{0x1f, (byte) 0x8b, 8, 4 | 8, 0, 0, 0, 0, 0, (byte) 0xff});
+        out.writeBytes(new byte[]{3, 0, 'a', 'b', 'c'});
+        out.writeBytes("volumes.json\0".getBytes(StandardCharsets.US_ASCII));
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt((int) crc.getValue()).putInt(data.length);
+        out.writeBytes(trailer.array());
+        return out.toByteArray();
+    }
+
+    private static List<byte[]> split(byte[] data, int maxChunk, Random random) {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int at = 0; at < data.length; ) {
+            int n = Math.min(data.length - at, 1 + random.nextInt(maxChunk));
+            byte[] chunk = new byte[n];
+            System.arraycopy(data, at, chunk, 0, n);
+            chunks.add(chunk);
+            at += n;
+        }
+        return chunks;
+    }
+
+    private static List<String> titles(List<Book> books) {
+        List<String> titles = new ArrayList<>();
+        for (Book book : books) {
+            titles.add(book.title() + " / " + book.authors());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+public final class WandTest {
+    private static final int DOCS = 3000;
+    private static final float[] WEIGHTS = {3f, 1.5f, 1f};
+
+    // Pruning may skip documents but never change the answer: block-max WAND must return the same
+    // top k as scoring every document, including with statistics summed with another shard's
+    public void testPrunedTopKMatchesExhaustiveScoring() {
+        Random random = new Random(7);
+        String[] vocabulary = new String[60];
+        for (int w = 0; w < vocabulary.length; w++) {
+            vocabulary[w] = "word" + w;
+        }
+        InvertedIndex[] fields = build(random, vocabulary);
+        InvertedIndex[] other = build(random, vocabulary);
+        Bm25 bm25 = new Bm25(fields, WEIGHTS);
+        Bm25 shard = new Bm25(other, WEIGHTS);
+
+        for (int q = 0; q < 300; q++) {
+            StringBuilder query = new StringBuilder();
+            for (int t = 1 + random.nextInt(4); t > 0; t--) {
+                query.append(zipf(random, vocabulary)).append(' ');
+            }
+            int k = 1 + random.nextInt(20);
+            Bm25.Stats stats = q % 2 == 0 ? bm25.stats(query.toString())
+                    : bm25.stats(query.toString()).plus(shard.stats(query.toString()));
+            List<TopK.Hit> pruned = bm25.search(query.toString(), k, stats);
+            List<TopK.Hit> exact = exhaustive(fields, query.toString(), k, stats);
+
+            Assert.assertEquals(exact.size(), pruned.size());
+            for (int i = 0; i < exact.size(); i++) {
+                // Sums may be added up in another order, so scores agree to rounding only
+                Assert.assertTrue(Math.abs(exact.get(i).score() - pruned.get(i).score()) < 1e-4f,
+                        "query '" + query + "' rank " + i + ": " + exact.get(i) + " vs " + pruned.get(i));
+                float own = score(fields, query.toString(), pruned.get(i).doc(), stats);
+                Assert.assertTrue(Math.abs(own - pruned.get(i).score()) < 1e-4f,
+                        "query '" + query + "' scored doc " + pruned.get(i).doc() + " wrong");
+            }
+        }
+    }
+
+    // A title, a sparse subtitle and a longer description per document, in skewed word frequencies
+    private static InvertedIndex[] build(Random random, String[] vocabulary) {
+        int[] lengths = {6, 3, 40};
+        InvertedIndex.Builder[] builders = new InvertedIndex.Builder[lengths.length];
+        for (int f = 0; f < lengths.length; f++) {
+            builders[f] = new InvertedIndex.Builder();
+        }
+        for (int doc = 0; doc < DOCS; doc++) {
+            for (int f = 0; f < lengths.length; f++) {
+                StringBuilder text = new StringBuilder();
+                int words = f == 1 && random.nextInt(3) > 0 ? 0 : 1 + random.nextInt(lengths[f]);
+                for (int w = 0; w < words; w++) {
+                    text.append(zipf(random, vocabulary)).append(' ');
+                }
+                builders[f].add(doc, text.toString());
+            }
+        }
+        InvertedIndex[] fields = new InvertedIndex[lengths.length];
+        for (int f = 0; f < lengths.length; f++) {
+            fields[f] = builders[f].build();
+        }
+        return fields;
+    }
+
+    private static String zipf(Random random, String[] vocabulary) {
+        double u = random.nextDouble();
+        return vocabulary[(int) (vocabulary.length * u * u * u)];
+    }
+
+    private static List<TopK.Hit> exhaustive(InvertedIndex[] fields, String query, int k, Bm25.Stats stats) {
+        TopK top = new TopK(k);
+        for (int doc = 0; doc < DOCS; doc++) {
+            float score = score(fields, query, doc, stats);
+            if (score > 0) {
+                top.offer(doc, score);
+            }
+        }
+        return top.results();
+    }
+
+    private static float score(InvertedIndex[] fields, String query, int doc, Bm25.Stats stats) {
+        float score = 0;
+        for (String token : new LinkedHashSet<>(Tokenizer.tokenize(query))) {
+            for (int f = 0; f < fields.length; f++) {
+                InvertedIndex.Cursor cursor = fields[f].cursor(token);
+                if (cursor == null) {
+                    continue;
+                }
+                cursor.advance(doc);
+                if (cursor.doc() == doc) {
+                    float idf = Bm25.idf(stats.docFreqs().get(token)[f], stats.docCounts()[f]);
+                    score += WEIGHTS[f] * idf * Bm25.tf(cursor.freq(), fields[f].docLength(doc), stats.averageLength(f));
+                }
+            }
+        }
+        return score;
+    }
+}